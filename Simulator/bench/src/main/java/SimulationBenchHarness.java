@@ -0,0 +1,159 @@
+import benchmark.SimulationHarness;
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class SimulationBenchHarness implements SimulationHarness {
+    private static final int WIDTH = 1280;
+    private static final int HEIGHT = 720;
+
+    private Ball[] balls;
+    private Controller controller;
+    private double[] kernelX, kernelY, kernelVx, kernelVy;
+    private IntegrationKernel vectorKernel;
+    private ThreadController threadController;
+    // Two copies of the world one step apart; the delta encoders alternate between them, so every particle has
+    // moved since the previous frame without a tick inside the measurement
+    private final Controller[] encodeStates = new Controller[2];
+    private long deltaTick, areaTick;
+    private FrameEncoder encoder;
+    private FrameEncoder areaEncoder;
+    private byte[] particleFrame;
+    private ClientWorld clientWorld;
+
+    @Override
+    public void setUp(int particleCount) {
+        Random random = new Random(42);
+        balls = new Ball[particleCount];
+        controller = new Controller();
+        controller.setWorldSize(WIDTH, HEIGHT);
+        threadController = new ThreadController();
+        threadController.setCanvasSize(WIDTH, HEIGHT);
+
+        double[] xs = new double[particleCount], ys = new double[particleCount];
+        double[] vxs = new double[particleCount], vys = new double[particleCount];
+        for (int i = 0; i < particleCount; i++) {
+            int x = 5 + random.nextInt(WIDTH - 10);
+            int y = 5 + random.nextInt(HEIGHT - 10);
+            double angle = random.nextDouble() * Math.PI * 2;
+            double velocity = 1 + random.nextDouble() * 20;
+            xs[i] = x;
+            ys[i] = y;
+            vxs[i] = Math.cos(angle) * velocity;
+            vys[i] = Math.sin(angle) * velocity;
+            balls[i] = new Ball(i, x, y, vxs[i], vys[i]);
+        }
+        kernelX = xs.clone();
+        kernelY = ys.clone();
+        kernelVx = vxs.clone();
+        kernelVy = vys.clone();
+        SpawnBatch batch = SpawnBatch.of(xs, ys, vxs, vys);
+        controller.addParticles(batch);
+        threadController.addSpawnBatch(batch);
+        // Pending spawns are appended at the next tick boundary
+        threadController.tick();
+
+        controller.rebuildSpatialIndex(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+        for (int s = 0; s < encodeStates.length; s++) {
+            Controller state = new Controller();
+            state.setWorldSize(WIDTH, HEIGHT);
+            state.addParticles(batch);
+            for (int step = 0; step < s; step++) {
+                state.updateParticles(WIDTH, HEIGHT);
+            }
+            state.rebuildSpatialIndex(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+            encodeStates[s] = state;
+        }
+        int positionScale = Protocol.positionScale(WIDTH, HEIGHT);
+        encoder = new FrameEncoder(positionScale);
+        areaEncoder = new FrameEncoder(positionScale);
+        ByteBuffer frame = new FrameEncoder(positionScale).encodeParticles(threadController.getParticles(), 0, false);
+        particleFrame = new byte[frame.remaining()];
+        frame.get(particleFrame);
+
+        clientWorld = new ClientWorld();
+        ByteBuffer hello = FrameEncoder.encodeHello(0, WIDTH, HEIGHT, ThreadController.DEFAULT_TICK_RATE, positionScale, Protocol.UPDATE_STATE);
+        hello.position(Protocol.LENGTH_SIZE);
+        clientWorld.handleFrame(hello);
+    }
+
+    @Override
+    public void updateBalls() {
+        for (Ball ball : balls) {
+            ball.update(WIDTH, HEIGHT);
+        }
+    }
+
+    @Override
+    public void updateController() {
+        controller.updateParticles(WIDTH, HEIGHT);
+    }
+
+    @Override
+    public void integrateScalar() {
+        IntegrationKernel.SCALAR.integrate(kernelX, kernelY, kernelVx, kernelVy, 0, kernelX.length, WIDTH, HEIGHT);
+    }
+
+    @Override
+    public void integrateVector() {
+        // Loaded on first use, so benchmarks forked without the incubator module only fail here
+        if (vectorKernel == null) {
+            vectorKernel = IntegrationKernel.vector();
+            if (vectorKernel == null) {
+                throw new IllegalStateException("The vector kernel needs --add-modules jdk.incubator.vector");
+            }
+        }
+        vectorKernel.integrate(kernelX, kernelY, kernelVx, kernelVy, 0, kernelX.length, WIDTH, HEIGHT);
+    }
+
+    @Override
+    public void tick() {
+        threadController.tick();
+    }
+
+    @Override
+    public void rebuildSpatialIndex() {
+        controller.rebuildSpatialIndex(ForkJoinPool.commonPool(), ForkJoinPool.getCommonPoolParallelism());
+    }
+
+    @Override
+    public int queryViewport() {
+        int[] found = new int[1];
+        double left = (WIDTH - Explorer.VIEW_WIDTH) / 2.0;
+        double top = (HEIGHT - Explorer.VIEW_HEIGHT) / 2.0;
+        controller.forEachParticleInRect(left, top, left + Explorer.VIEW_WIDTH, top + Explorer.VIEW_HEIGHT, i -> found[0]++);
+        return found[0];
+    }
+
+    @Override
+    public int encodeParticleDelta() {
+        // Each call encodes the state the previous one did not, as the next tick would
+        Controller state = encodeStates[(int) (++deltaTick & 1)];
+        return encoder.encodeParticles(state.getParticles(), deltaTick, true).remaining();
+    }
+
+    @Override
+    public int encodeParticlesInView() {
+        double left = (WIDTH - Explorer.VIEW_WIDTH) / 2.0 - Server.INTEREST_MARGIN;
+        double top = (HEIGHT - Explorer.VIEW_HEIGHT) / 2.0 - Server.INTEREST_MARGIN;
+        double right = (WIDTH + Explorer.VIEW_WIDTH) / 2.0 + Server.INTEREST_MARGIN;
+        double bottom = (HEIGHT + Explorer.VIEW_HEIGHT) / 2.0 + Server.INTEREST_MARGIN;
+        Controller state = encodeStates[(int) (++areaTick & 1)];
+        int bytes = 0;
+        for (ByteBuffer frame : areaEncoder.encodeParticlesInArea(state.getParticles(), state.getSpatialGrid(),
+                left, top, right, bottom, areaTick)) {
+            bytes += frame.remaining();
+        }
+        return bytes;
+    }
+
+    @Override
+    public int decodeParticleFrame() {
+        return clientWorld.handleFrames(ByteBuffer.wrap(particleFrame));
+    }
+
+    @Override
+    public void tearDown() {
+        threadController.stop();
+    }
+}
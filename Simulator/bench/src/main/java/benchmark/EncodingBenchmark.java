@@ -0,0 +1,78 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EncodingBenchmark {
+    // The delta encoders alternate between two pre-stepped copies of the world, so nothing runs between calls
+    @State(Scope.Benchmark)
+    public static class Encoding {
+        @Param({"1000", "10000", "100000"})
+        public int particleCount;
+
+        private SimulationHarness harness;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            harness = SimulationHarness.create();
+            harness.setUp(particleCount);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            harness.tearDown();
+        }
+    }
+
+    // Decoding only reads the frame built at setup
+    @State(Scope.Benchmark)
+    public static class Decoding {
+        @Param({"1000", "10000", "100000"})
+        public int particleCount;
+
+        private SimulationHarness harness;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            harness = SimulationHarness.create();
+            harness.setUp(particleCount);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            harness.tearDown();
+        }
+    }
+
+    @Benchmark
+    public int encodeParticleDelta(Encoding state) {
+        return state.harness.encodeParticleDelta();
+    }
+
+    @Benchmark
+    public int encodeParticlesInView(Encoding state) {
+        return state.harness.encodeParticlesInView();
+    }
+
+    @Benchmark
+    public int handleFrame(Decoding state) {
+        return state.harness.decodeParticleFrame();
+    }
+}
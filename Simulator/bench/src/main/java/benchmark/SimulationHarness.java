@@ -0,0 +1,42 @@
+package benchmark;
+
+/**
+ * Bridge between the JMH benchmarks and the simulator. JMH only accepts benchmarks in a named package,
+ * while the simulator lives in the unnamed package, so the implementation sits next to the simulator
+ * sources and is looked up by name.
+ */
+public interface SimulationHarness {
+    String IMPLEMENTATION = "SimulationBenchHarness";
+
+    static SimulationHarness create() {
+        try {
+            return (SimulationHarness) Class.forName(IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot load " + IMPLEMENTATION, e);
+        }
+    }
+
+    void setUp(int particleCount);
+
+    void updateBalls();
+
+    void updateController();
+
+    void integrateScalar();
+
+    void integrateVector();
+
+    void tick();
+
+    void rebuildSpatialIndex();
+
+    int queryViewport();
+
+    int encodeParticleDelta();
+
+    int encodeParticlesInView();
+
+    int decodeParticleFrame();
+
+    void tearDown();
+}
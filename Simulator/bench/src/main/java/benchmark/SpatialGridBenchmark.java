@@ -0,0 +1,51 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SpatialGridBenchmark {
+    @Param({"10000", "100000", "1000000"})
+    public int particleCount;
+
+    private SimulationHarness harness;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        harness = SimulationHarness.create();
+        harness.setUp(particleCount);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        harness.tearDown();
+    }
+
+    @Benchmark
+    public void rebuild() {
+        harness.rebuildSpatialIndex();
+    }
+
+    // A 640x360 explorer-sized viewport in the middle of the world
+    @Benchmark
+    public int queryViewport() {
+        return harness.queryViewport();
+    }
+}
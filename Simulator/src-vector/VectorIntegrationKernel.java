@@ -0,0 +1,43 @@
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+// The integration step a full vector of particles at a time. Addition, comparison, negation and min / max are
+// exact, so every lane ends up with the same bits as ParticleStore.integrate; the tail runs through it too.
+// Kept out of src and compiled on its own with the incubator module, so the rest builds on any JDK; only
+// referenced by name from IntegrationKernel, so the module is not needed at runtime unless this is picked.
+public class VectorIntegrationKernel implements IntegrationKernel {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    private static final int HALF_SIZE = Ball.SIZE / 2;
+
+    @Override
+    public void integrate(double[] x, double[] y, double[] vx, double[] vy, int from, int to, int canvasWidth, int canvasHeight) {
+        double maxX = canvasWidth - HALF_SIZE;
+        double maxY = canvasHeight - HALF_SIZE;
+        int lanes = SPECIES.length();
+        int i = from;
+        for (int end = to - lanes; i <= end; i += lanes) {
+            DoubleVector velocityX = DoubleVector.fromArray(SPECIES, vx, i);
+            DoubleVector velocityY = DoubleVector.fromArray(SPECIES, vy, i);
+            DoubleVector px = DoubleVector.fromArray(SPECIES, x, i).add(velocityX);
+            DoubleVector py = DoubleVector.fromArray(SPECIES, y, i).add(velocityY);
+
+            // Bounce off the edges of the canvas
+            VectorMask<Double> bounceX = px.compare(VectorOperators.LE, HALF_SIZE).or(px.compare(VectorOperators.GE, maxX));
+            VectorMask<Double> bounceY = py.compare(VectorOperators.LE, HALF_SIZE).or(py.compare(VectorOperators.GE, maxY));
+            velocityX.lanewise(VectorOperators.NEG, bounceX).intoArray(vx, i);
+            velocityY.lanewise(VectorOperators.NEG, bounceY).intoArray(vy, i);
+
+            // Ensure the particles stay within the bounds
+            px.min(maxX).max(HALF_SIZE).intoArray(x, i);
+            py.min(maxY).max(HALF_SIZE).intoArray(y, i);
+        }
+        ParticleStore.integrate(x, y, vx, vy, i, to, canvasWidth, canvasHeight);
+    }
+
+    @Override
+    public String getName() {
+        return "vector (" + SPECIES.length() + " lanes)";
+    }
+}
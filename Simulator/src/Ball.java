@@ -1,12 +1,11 @@
 import java.awt.Graphics;
-import java.util.UUID;
 
 public class Ball {
-    private String id;
+    private int id;
     private double x, y, vx, vy;
-    private static final int SIZE = 10; // Ball size
+    static final int SIZE = 10; // Ball size
 
-    public Ball(String id, int x, int y, double vx, double vy) {
+    public Ball(int id, int x, int y, double vx, double vy) {
         this.id = id;
         this.x = x;
         this.y = y;
@@ -14,10 +13,6 @@ public class Ball {
         this.vy = vy;
     }
 
-    public Ball(int x, int y, double vx, double vy) {
-        this(UUID.randomUUID().toString(), x, y, vx, vy);
-    }
-
     public void update(int canvasWidth, int canvasHeight) {
         x += vx;
         y += vy;
@@ -36,12 +31,16 @@ public class Ball {
     }
 
     public void draw(Graphics g, int canvasHeight, double alpha) {
+        draw(g, x, y);
+    }
+
+    public static void draw(Graphics g, double x, double y) {
         int drawX = (int) (x - SIZE / 2);
         int drawY = (int) (y - SIZE / 2);
         g.fillOval(drawX, drawY, SIZE, SIZE);
     }
 
-    public String getId() {
+    public int getId() {
         return id;
     }
 
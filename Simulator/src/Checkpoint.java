@@ -0,0 +1,254 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+
+// The whole simulation as of one tick, in the columns it is stored in. The file is little endian:
+//   int magic, int version, long tick, int worldWidth, int worldHeight, int idLimit, int particleCount,
+//   int explorerCount, the particle columns int ids[], double x[], y[], vx[], vy[], then per explorer
+//   { int id, double x, double y, double vx, double vy }
+// Columns are copied in bulk both ways, so writing and loading cost about as much as copying the arrays.
+public class Checkpoint {
+    private static final int MAGIC = 0x50534350;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 36;
+    private static final int EXPLORER_RECORD_SIZE = 36;
+    // Staging buffer of the writer; columns larger than this go out in several writes
+    private static final int WRITE_CHUNK_SIZE = 1 << 20;
+
+    private long tick;
+    private int worldWidth, worldHeight;
+    private int idLimit;
+    private int particleCount;
+    private int[] ids = new int[0];
+    private double[] x = new double[0], y = new double[0], vx = new double[0], vy = new double[0];
+    private int explorerCount;
+    private int[] explorerIds = new int[0];
+    private double[] explorerX = new double[0], explorerY = new double[0], explorerVx = new double[0], explorerVy = new double[0];
+    private ByteBuffer writeBuffer;
+
+    // Must run under the read lock; reuses the arrays of the previous capture
+    void capture(long tick, int worldWidth, int worldHeight, int idLimit, ParticleStore particles, List<Explorer> explorers) {
+        this.tick = tick;
+        this.worldWidth = worldWidth;
+        this.worldHeight = worldHeight;
+        this.idLimit = idLimit;
+        int count = particles.size();
+        ensureParticleCapacity(count);
+        System.arraycopy(particles.getIds(), 0, ids, 0, count);
+        System.arraycopy(particles.getX(), 0, x, 0, count);
+        System.arraycopy(particles.getY(), 0, y, 0, count);
+        System.arraycopy(particles.getVx(), 0, vx, 0, count);
+        System.arraycopy(particles.getVy(), 0, vy, 0, count);
+        particleCount = count;
+
+        ensureExplorerCapacity(explorers.size());
+        explorerCount = 0;
+        for (Explorer explorer : explorers) {
+            if (explorerCount == explorerIds.length) {
+                ensureExplorerCapacity(explorerCount + 1);
+            }
+            explorerIds[explorerCount] = explorer.getId();
+            explorerX[explorerCount] = explorer.getX();
+            explorerY[explorerCount] = explorer.getY();
+            explorerVx[explorerCount] = explorer.getVx();
+            explorerVy[explorerCount] = explorer.getVy();
+            explorerCount++;
+        }
+    }
+
+    public long sizeInBytes() {
+        return HEADER_SIZE + (long) particleCount * (4 + 4 * 8) + (long) explorerCount * EXPLORER_RECORD_SIZE;
+    }
+
+    // Writes the whole file through the channel from a reused direct buffer
+    void write(Path file) throws IOException {
+        if (writeBuffer == null) {
+            writeBuffer = ByteBuffer.allocateDirect(WRITE_CHUNK_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        ByteBuffer buffer = writeBuffer;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            buffer.clear();
+            buffer.putInt(MAGIC).putInt(VERSION).putLong(tick).putInt(worldWidth).putInt(worldHeight)
+                .putInt(idLimit).putInt(particleCount).putInt(explorerCount);
+            for (int offset = 0; offset < particleCount; ) {
+                int chunk = Math.min(particleCount - offset, buffer.remaining() / 4);
+                if (chunk == 0) {
+                    drain(channel, buffer);
+                    continue;
+                }
+                buffer.asIntBuffer().put(ids, offset, chunk);
+                buffer.position(buffer.position() + chunk * 4);
+                offset += chunk;
+            }
+            for (double[] column : new double[][]{x, y, vx, vy}) {
+                for (int offset = 0; offset < particleCount; ) {
+                    int chunk = Math.min(particleCount - offset, buffer.remaining() / 8);
+                    if (chunk == 0) {
+                        drain(channel, buffer);
+                        continue;
+                    }
+                    buffer.asDoubleBuffer().put(column, offset, chunk);
+                    buffer.position(buffer.position() + chunk * 8);
+                    offset += chunk;
+                }
+            }
+            for (int i = 0; i < explorerCount; i++) {
+                if (buffer.remaining() < EXPLORER_RECORD_SIZE) {
+                    drain(channel, buffer);
+                }
+                buffer.putInt(explorerIds[i]).putDouble(explorerX[i]).putDouble(explorerY[i]).putDouble(explorerVx[i]).putDouble(explorerVy[i]);
+            }
+            drain(channel, buffer);
+            channel.force(false);
+        }
+    }
+
+    private static void drain(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    // Maps the file and copies its columns out in bulk
+    public static Checkpoint read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE) {
+                throw new IOException("Not a checkpoint: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            mapped.order(ByteOrder.LITTLE_ENDIAN);
+            if (mapped.getInt() != MAGIC) {
+                throw new IOException("Not a checkpoint: " + file);
+            }
+            int version = mapped.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported checkpoint version " + version + ": " + file);
+            }
+
+            Checkpoint checkpoint = new Checkpoint();
+            checkpoint.tick = mapped.getLong();
+            checkpoint.worldWidth = mapped.getInt();
+            checkpoint.worldHeight = mapped.getInt();
+            checkpoint.idLimit = mapped.getInt();
+            int count = mapped.getInt();
+            int explorers = mapped.getInt();
+            checkpoint.particleCount = count;
+            checkpoint.explorerCount = explorers;
+            if (count < 0 || explorers < 0 || checkpoint.sizeInBytes() != size) {
+                throw new IOException("Truncated checkpoint: " + file);
+            }
+
+            checkpoint.ensureParticleCapacity(count);
+            mapped.asIntBuffer().get(checkpoint.ids, 0, count);
+            mapped.position(mapped.position() + count * 4);
+            for (double[] column : new double[][]{checkpoint.x, checkpoint.y, checkpoint.vx, checkpoint.vy}) {
+                mapped.asDoubleBuffer().get(column, 0, count);
+                mapped.position(mapped.position() + count * 8);
+            }
+            checkpoint.ensureExplorerCapacity(explorers);
+            for (int i = 0; i < explorers; i++) {
+                checkpoint.explorerIds[i] = mapped.getInt();
+                checkpoint.explorerX[i] = mapped.getDouble();
+                checkpoint.explorerY[i] = mapped.getDouble();
+                checkpoint.explorerVx[i] = mapped.getDouble();
+                checkpoint.explorerVy[i] = mapped.getDouble();
+            }
+            return checkpoint;
+        }
+    }
+
+    private void ensureParticleCapacity(int count) {
+        if (ids.length < count) {
+            int capacity = Math.max(count, ids.length + (ids.length >> 1));
+            ids = new int[capacity];
+            x = new double[capacity];
+            y = new double[capacity];
+            vx = new double[capacity];
+            vy = new double[capacity];
+        }
+    }
+
+    private void ensureExplorerCapacity(int count) {
+        if (explorerIds.length < count) {
+            int capacity = Math.max(count, explorerIds.length * 2);
+            explorerIds = Arrays.copyOf(explorerIds, capacity);
+            explorerX = Arrays.copyOf(explorerX, capacity);
+            explorerY = Arrays.copyOf(explorerY, capacity);
+            explorerVx = Arrays.copyOf(explorerVx, capacity);
+            explorerVy = Arrays.copyOf(explorerVy, capacity);
+        }
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getWorldWidth() {
+        return worldWidth;
+    }
+
+    public int getWorldHeight() {
+        return worldHeight;
+    }
+
+    public int getIdLimit() {
+        return idLimit;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVx() {
+        return vx;
+    }
+
+    public double[] getVy() {
+        return vy;
+    }
+
+    public int getExplorerCount() {
+        return explorerCount;
+    }
+
+    public int[] getExplorerIds() {
+        return explorerIds;
+    }
+
+    public double[] getExplorerX() {
+        return explorerX;
+    }
+
+    public double[] getExplorerY() {
+        return explorerY;
+    }
+
+    public double[] getExplorerVx() {
+        return explorerVx;
+    }
+
+    public double[] getExplorerVy() {
+        return explorerVy;
+    }
+}
@@ -0,0 +1,114 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Saves the simulation to one file every interval, on request and on shutdown, and loads it back at startup.
+// A checkpoint only holds the read lock while the columns are copied; the file is written on the checkpoint
+// thread next to the old one and renamed over it, so a crash mid-write leaves the previous checkpoint intact.
+public class Checkpointer {
+    public static final String DEFAULT_PATH = "simulation.ckpt";
+    public static final int DEFAULT_INTERVAL_SECONDS = 60;
+
+    private final ThreadController threadManager;
+    private final Path file;
+    private final Path tempFile;
+    // Captures reuse its arrays, so checkpoints run one at a time on the checkpoint thread
+    private final Checkpoint checkpoint = new Checkpoint();
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LatencyHistogram captureTime = new LatencyHistogram();
+    private final LatencyHistogram writeTime = new LatencyHistogram();
+    private volatile long lastCheckpointBytes = 0;
+
+    public Checkpointer(ThreadController threadManager, Path file) {
+        this.threadManager = threadManager;
+        this.file = file;
+        this.tempFile = file.resolveSibling(file.getFileName() + ".tmp");
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // Loads the checkpoint if there is one; returns whether the simulation was restored
+    public boolean restore() {
+        if (!Files.isRegularFile(file)) {
+            return false;
+        }
+        long start = System.nanoTime();
+        try {
+            Checkpoint saved = Checkpoint.read(file);
+            threadManager.restoreCheckpoint(saved);
+            System.out.printf("Restored %d particles and %d explorers at tick %d from %s in %d ms%n", saved.getParticleCount(),
+                saved.getExplorerCount(), saved.getTick(), file, (System.nanoTime() - start) / 1_000_000);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Could not restore " + file + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    // Checkpoints every intervalSeconds when positive, and once more when the JVM shuts down
+    public void start(int intervalSeconds) {
+        if (intervalSeconds > 0) {
+            executor.scheduleWithFixedDelay(this::checkpointQuietly, intervalSeconds, intervalSeconds, TimeUnit.SECONDS);
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(this::checkpointOnShutdown, "checkpoint-shutdown"));
+    }
+
+    // Completes with a summary of the written checkpoint, or exceptionally when it could not be written
+    public CompletableFuture<String> requestCheckpoint() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return checkpoint();
+            } catch (IOException e) {
+                throw new RuntimeException("Could not write " + file + ": " + e.getMessage(), e);
+            }
+        }, executor);
+    }
+
+    private String checkpoint() throws IOException {
+        long start = System.nanoTime();
+        threadManager.captureCheckpoint(checkpoint);
+        captureTime.recordSince(start);
+        long writeStart = System.nanoTime();
+        checkpoint.write(tempFile);
+        Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        writeTime.recordSince(writeStart);
+        lastCheckpointBytes = checkpoint.sizeInBytes();
+        return String.format("Checkpointed %d particles at tick %d to %s in %d ms", checkpoint.getParticleCount(),
+            checkpoint.getTick(), file, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    private void checkpointQuietly() {
+        try {
+            System.out.println(checkpoint());
+        } catch (IOException e) {
+            System.err.println("Could not write " + file + ": " + e.getMessage());
+        }
+    }
+
+    // Runs the last checkpoint on the checkpoint thread as well, after any one in progress
+    private void checkpointOnShutdown() {
+        try {
+            executor.submit(this::checkpointQuietly).get();
+        } catch (Exception e) {
+            System.err.println("Could not write " + file + " on shutdown: " + e.getMessage());
+        }
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        metrics.histogram("checkpoint_capture", "Time the checkpoint copy held the read lock", captureTime);
+        metrics.histogram("checkpoint_write", "Time to write and rename the checkpoint file", writeTime);
+        metrics.gauge("checkpoint_bytes", "Size of the last checkpoint written", () -> lastCheckpointBytes);
+    }
+}
@@ -0,0 +1,105 @@
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Positions of everything the client knew after one server tick. Not modified while published or pinned
+// by a reader; ClientWorld refills a snapshot only after it left the history and every reader released it.
+public class ClientSnapshot {
+    private final AtomicInteger readers = new AtomicInteger();
+    private long tick;
+    private int particleCount;
+    private int particleSlots, explorerSlots;
+    private int[] particleIds = new int[0];
+    private double[] particleX = new double[0], particleY = new double[0];
+    private int[] explorerIds = new int[0];
+    private double[] explorerX = new double[0], explorerY = new double[0];
+
+    // Copies the slot columns, reusing this snapshot's arrays unless the world outgrew them
+    void capture(long tick, EntitySlots particles, EntitySlots explorers) {
+        this.tick = tick;
+        this.particleCount = particles.size();
+        particleSlots = particles.getSlotCount();
+        if (particleIds.length < particleSlots) {
+            int capacity = Math.max(particleSlots, particleIds.length * 2);
+            particleIds = new int[capacity];
+            particleX = new double[capacity];
+            particleY = new double[capacity];
+        }
+        System.arraycopy(particles.getIds(), 0, particleIds, 0, particleSlots);
+        System.arraycopy(particles.getX(), 0, particleX, 0, particleSlots);
+        System.arraycopy(particles.getY(), 0, particleY, 0, particleSlots);
+
+        explorerSlots = explorers.getSlotCount();
+        if (explorerIds.length < explorerSlots) {
+            int capacity = Math.max(explorerSlots, explorerIds.length * 2);
+            explorerIds = new int[capacity];
+            explorerX = new double[capacity];
+            explorerY = new double[capacity];
+        }
+        System.arraycopy(explorers.getIds(), 0, explorerIds, 0, explorerSlots);
+        System.arraycopy(explorers.getX(), 0, explorerX, 0, explorerSlots);
+        System.arraycopy(explorers.getY(), 0, explorerY, 0, explorerSlots);
+    }
+
+    void retain() {
+        readers.incrementAndGet();
+    }
+
+    void release() {
+        readers.decrementAndGet();
+    }
+
+    boolean isPinned() {
+        return readers.get() > 0;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    // Slot arrays are valid up to the slot count; a slot holds the same particle in two snapshots
+    // when the ids match, -1 marks a free slot
+    public int getParticleSlotCount() {
+        return particleSlots;
+    }
+
+    public int[] getParticleIds() {
+        return particleIds;
+    }
+
+    public double[] getParticleX() {
+        return particleX;
+    }
+
+    public double[] getParticleY() {
+        return particleY;
+    }
+
+    public int getExplorerSlotCount() {
+        return explorerSlots;
+    }
+
+    public int[] getExplorerIds() {
+        return explorerIds;
+    }
+
+    public double[] getExplorerX() {
+        return explorerX;
+    }
+
+    public double[] getExplorerY() {
+        return explorerY;
+    }
+
+    // Slot of the explorer in this snapshot, -1 when it is not there
+    public int explorerSlot(int id) {
+        for (int slot = 0; slot < explorerSlots; slot++) {
+            if (explorerIds[slot] == id) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+
+// Counters of one connection: frames are counted when queued by the broadcaster, bytes when the I/O thread wrote them
+public class ClientStats implements ClientStatsMBean {
+    private final int explorerId;
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final IntSupplier queuedBytes;
+    private final BooleanSupplier downgraded;
+
+    public ClientStats(int explorerId, IntSupplier queuedBytes, BooleanSupplier downgraded) {
+        this.explorerId = explorerId;
+        this.queuedBytes = queuedBytes;
+        this.downgraded = downgraded;
+    }
+
+    void recordSentBytes(long bytes) {
+        sentBytes.addAndGet(bytes);
+    }
+
+    void recordSentFrames(int frames) {
+        sentFrames.addAndGet(frames);
+    }
+
+    @Override
+    public int getExplorerId() {
+        return explorerId;
+    }
+
+    @Override
+    public long getSentBytes() {
+        return sentBytes.get();
+    }
+
+    @Override
+    public long getSentFrames() {
+        return sentFrames.get();
+    }
+
+    @Override
+    public int getQueuedBytes() {
+        return queuedBytes.getAsInt();
+    }
+
+    @Override
+    public boolean isDowngraded() {
+        return downgraded.getAsBoolean();
+    }
+}
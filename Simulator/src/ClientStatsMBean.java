@@ -0,0 +1,11 @@
+public interface ClientStatsMBean {
+    int getExplorerId();
+
+    long getSentBytes();
+
+    long getSentFrames();
+
+    int getQueuedBytes();
+
+    boolean isDowngraded();
+}
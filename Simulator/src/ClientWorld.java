@@ -0,0 +1,270 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+public class ClientWorld {
+    public static final int DEFAULT_INTERPOLATION_DELAY_TICKS = 2;
+    // Arrivals later than this many ticks past the current estimate reset the tick clock instead of nudging it
+    private static final int CLOCK_RESET_TICKS = 4;
+    private static final int CLOCK_SMOOTHING_SHIFT = 5;
+    // Snapshots that left the history but may still be pinned by a slow paint; refilled once released
+    private static final int MAX_RETIRED_SNAPSHOTS = 4;
+
+    // Authoritative state, written by the network thread only
+    private final EntitySlots particles = new EntitySlots();
+    private final EntitySlots explorers = new EntitySlots();
+    private volatile int controlledExplorerId = -1;
+    private volatile int worldWidth, worldHeight, tickRate;
+    private volatile int positionScale = 1;
+    private volatile byte updateMode = Protocol.UPDATE_STATE;
+    private volatile long lastTick = 0;
+    // Around the controlled explorer, as of the last PROXIMITY frame; replaced as a whole
+    private volatile int nearbyCount = 0;
+    private volatile int[] contactIds = new int[0];
+
+    // Snapshots of the last few complete ticks, newest first; replaced as a whole on every tick
+    private volatile ClientSnapshot[] snapshots = new ClientSnapshot[0];
+    private int snapshotCount = 2;
+    private final ArrayDeque<ClientSnapshot> retiredSnapshots = new ArrayDeque<>();
+    private final double interpolationDelayMillis;
+    private volatile double interpolationDelayTicks = DEFAULT_INTERPOLATION_DELAY_TICKS;
+    private volatile long tickIntervalNanos = 1_000_000_000L / ThreadController.DEFAULT_TICK_RATE;
+    // Local time of server tick 0, estimated from the earliest arrivals
+    private volatile long clockOffsetNanos;
+    private boolean clockStarted = false;
+
+    public ClientWorld() {
+        this(-1);
+    }
+
+    // A negative delay renders DEFAULT_INTERPOLATION_DELAY_TICKS server ticks behind the newest snapshot
+    public ClientWorld(double interpolationDelayMillis) {
+        this.interpolationDelayMillis = interpolationDelayMillis;
+    }
+
+    // Applies every complete length-prefixed frame in the buffer, reading in place, and leaves the buffer
+    // positioned at the first incomplete one; returns the number of frames it could not read
+    public int handleFrames(ByteBuffer buffer) {
+        int unreadable = 0;
+        int limit = buffer.limit();
+        while (buffer.remaining() >= Protocol.LENGTH_SIZE) {
+            int start = buffer.position();
+            int end = start + Protocol.LENGTH_SIZE + buffer.getInt(start);
+            if (end > limit) {
+                break;
+            }
+            buffer.position(start + Protocol.LENGTH_SIZE).limit(end);
+            if (!handleFrame(buffer)) {
+                unreadable++;
+            }
+            buffer.limit(limit).position(end);
+        }
+        return unreadable;
+    }
+
+    // Applies one frame, positioned just after its length prefix; returns false for frames it cannot read
+    public boolean handleFrame(ByteBuffer frame) {
+        if (frame.get() != Protocol.VERSION) {
+            return false;
+        }
+        switch (frame.get()) {
+            case Protocol.HELLO:
+                readHello(frame);
+                return true;
+            case Protocol.PARTICLES:
+            case Protocol.PARTICLES_ENTER:
+                advanceTo(frame.getLong());
+                readParticles(frame);
+                return true;
+            case Protocol.PARTICLES_LEAVE:
+                advanceTo(frame.getLong());
+                readLeavingParticles(frame);
+                return true;
+            case Protocol.PROXIMITY:
+                advanceTo(frame.getLong());
+                readProximity(frame);
+                return true;
+            case Protocol.EXPLORERS:
+                long tick = frame.getLong();
+                advanceTo(tick);
+                readExplorers(frame);
+                // The server sends the explorers last, so the tick is complete
+                publishSnapshot(tick);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void readHello(ByteBuffer frame) {
+        controlledExplorerId = frame.getInt();
+        worldWidth = frame.getInt();
+        worldHeight = frame.getInt();
+        tickRate = frame.getInt();
+        positionScale = frame.getInt();
+        updateMode = frame.get();
+
+        tickIntervalNanos = 1_000_000_000L / Math.max(1, tickRate);
+        double delayTicks = interpolationDelayMillis < 0 ? DEFAULT_INTERPOLATION_DELAY_TICKS
+            : interpolationDelayMillis * 1_000_000 / tickIntervalNanos;
+        interpolationDelayTicks = delayTicks;
+        // Enough snapshots to reach back by the delay, plus the one being rendered towards
+        snapshotCount = Math.max(2, (int) Math.ceil(delayTicks) + 1);
+    }
+
+    // In dead reckoning mode the server only reports velocity changes, so known particles are stepped
+    // once per server tick with the same integration the server uses; records of the tick then overwrite them
+    private void advanceTo(long tick) {
+        long steps = tick - lastTick;
+        if (updateMode == Protocol.UPDATE_DEAD_RECKONING && lastTick > 0 && steps > 0) {
+            for (long step = 0; step < steps; step++) {
+                particles.step(worldWidth, worldHeight);
+            }
+        }
+        if (steps > 0) {
+            lastTick = tick;
+        }
+    }
+
+    private void readParticles(ByteBuffer frame) {
+        int count = frame.getInt();
+        int scale = positionScale;
+        boolean trajectories = updateMode == Protocol.UPDATE_DEAD_RECKONING;
+        for (int i = 0; i < count; i++) {
+            int id = frame.getInt();
+            if (trajectories) {
+                particles.put(id, frame.getFloat(), frame.getFloat(), frame.getFloat(), frame.getFloat());
+            } else {
+                particles.put(id,
+                    Protocol.dequantizePosition(frame.getChar(), scale),
+                    Protocol.dequantizePosition(frame.getChar(), scale),
+                    Protocol.dequantizeVelocity(frame.getShort()),
+                    Protocol.dequantizeVelocity(frame.getShort()));
+            }
+        }
+    }
+
+    private void readLeavingParticles(ByteBuffer frame) {
+        int count = frame.getInt();
+        for (int i = 0; i < count; i++) {
+            particles.remove(frame.getInt());
+        }
+    }
+
+    private void readExplorers(ByteBuffer frame) {
+        int count = frame.getInt();
+        int scale = positionScale;
+        for (int i = 0; i < count; i++) {
+            int id = frame.getInt();
+            double x = Protocol.dequantizePosition(frame.getChar(), scale);
+            double y = Protocol.dequantizePosition(frame.getChar(), scale);
+            explorers.put(id, x, y, 0, 0);
+        }
+    }
+
+    private void readProximity(ByteBuffer frame) {
+        int[] contacts = new int[frame.getInt()];
+        nearbyCount = frame.getInt();
+        for (int i = 0; i < contacts.length; i++) {
+            contacts[i] = frame.getInt();
+        }
+        contactIds = contacts;
+    }
+
+    private void publishSnapshot(long tick) {
+        long now = System.nanoTime();
+        long offset = now - tick * tickIntervalNanos;
+        // Early arrivals pull the clock back at once, late ones only nudge it, so bursts do not shake the view
+        if (!clockStarted || offset < clockOffsetNanos || offset - clockOffsetNanos > CLOCK_RESET_TICKS * tickIntervalNanos) {
+            clockOffsetNanos = offset;
+            clockStarted = true;
+        } else {
+            clockOffsetNanos += (offset - clockOffsetNanos) >> CLOCK_SMOOTHING_SHIFT;
+        }
+
+        ClientSnapshot snapshot = takeRetiredSnapshot();
+        snapshot.capture(tick, particles, explorers);
+        ClientSnapshot[] previous = snapshots;
+        ClientSnapshot[] next = new ClientSnapshot[Math.min(snapshotCount, previous.length + 1)];
+        next[0] = snapshot;
+        System.arraycopy(previous, 0, next, 1, next.length - 1);
+        snapshots = next;
+        for (int k = next.length - 1; k < previous.length; k++) {
+            if (retiredSnapshots.size() < MAX_RETIRED_SNAPSHOTS) {
+                retiredSnapshots.addLast(previous[k]);
+            }
+        }
+    }
+
+    private ClientSnapshot takeRetiredSnapshot() {
+        for (int k = retiredSnapshots.size(); k > 0; k--) {
+            ClientSnapshot snapshot = retiredSnapshots.pollFirst();
+            if (!snapshot.isPinned()) {
+                return snapshot;
+            }
+            retiredSnapshots.addLast(snapshot);
+        }
+        return new ClientSnapshot();
+    }
+
+    // Newest first, empty until the first tick arrived. The snapshots stay untouched until
+    // releaseSnapshots is called with the returned array.
+    public ClientSnapshot[] acquireSnapshots() {
+        while (true) {
+            ClientSnapshot[] current = snapshots;
+            for (ClientSnapshot snapshot : current) {
+                snapshot.retain();
+            }
+            // Unchanged history means none of them was retired before it was pinned
+            if (snapshots == current) {
+                return current;
+            }
+            releaseSnapshots(current);
+        }
+    }
+
+    public void releaseSnapshots(ClientSnapshot[] acquired) {
+        for (ClientSnapshot snapshot : acquired) {
+            snapshot.release();
+        }
+    }
+
+    // The fractional server tick to draw at the given local time: the interpolation delay behind the server clock
+    public double renderTick(long nanoTime) {
+        return (double) (nanoTime - clockOffsetNanos) / tickIntervalNanos - interpolationDelayTicks;
+    }
+
+    public int getParticleCount() {
+        ClientSnapshot[] snapshots = this.snapshots;
+        return snapshots.length > 0 ? snapshots[0].getParticleCount() : 0;
+    }
+
+    // Particles within the server's proximity radius of the controlled explorer
+    public int getNearbyCount() {
+        return nearbyCount;
+    }
+
+    // Ids of the particles touching the controlled explorer; never written after it is returned
+    public int[] getContactIds() {
+        return contactIds;
+    }
+
+    public long getLastTick() {
+        return lastTick;
+    }
+
+    public int getWorldWidth() {
+        return worldWidth;
+    }
+
+    public int getWorldHeight() {
+        return worldHeight;
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public int getControlledExplorerId() {
+        return controlledExplorerId;
+    }
+}
@@ -0,0 +1,110 @@
+import java.util.concurrent.ForkJoinPool;
+
+// Elastic collisions between equal particles. The broadphase is a grid with cells as wide as a particle, rebuilt
+// in parallel every tick, so touching particles are always in neighbouring cells. The narrowphase visits every
+// pair once from its upper-left cell and swaps the velocity components along the normal in place. A cell only
+// writes particles in its own row and the row below, so rows are grouped into bands and the even bands run in
+// parallel first, then the odd ones: bands running at the same time never touch the same particle. The bands
+// do not depend on the partition count, so the result is the same however many workers run it.
+public class CollisionSolver {
+    private static final double DIAMETER = Ball.SIZE;
+    private static final double DIAMETER_SQUARED = DIAMETER * DIAMETER;
+    private static final int BAND_ROWS = 4;
+
+    private final SpatialGrid grid;
+    private volatile int lastContacts = 0;
+
+    public CollisionSolver(int width, int height) {
+        grid = new SpatialGrid(width, height, Ball.SIZE);
+    }
+
+    // Changes velocities only, so the positions, and every index built from them this tick, stay valid
+    public void resolve(ParticleStore particles, ForkJoinPool pool, int partitions) {
+        if (particles.size() < 2) {
+            lastContacts = 0;
+            return;
+        }
+        grid.rebuild(particles, pool, partitions);
+        int bands = (grid.getRows() + BAND_ROWS - 1) / BAND_ROWS;
+        int[] contacts = new int[bands];
+        for (int parity = 0; parity < 2; parity++) {
+            int firstBand = parity;
+            int bandCount = (bands - firstBand + 1) / 2;
+            ParallelTasks.run(pool, bandCount, k -> {
+                int band = firstBand + 2 * k;
+                contacts[band] = resolveBand(particles, band * BAND_ROWS, Math.min(grid.getRows(), (band + 1) * BAND_ROWS));
+            });
+        }
+        int total = 0;
+        for (int touching : contacts) {
+            total += touching;
+        }
+        lastContacts = total;
+    }
+
+    // Resolves the pairs whose upper-left particle lies in the rows, in row-major order; returns how many touched
+    private int resolveBand(ParticleStore particles, int firstRow, int endRow) {
+        double[] x = particles.getX(), y = particles.getY();
+        double[] vx = particles.getVx(), vy = particles.getVy();
+        int[] cellStart = grid.getCellStart(), cellParticles = grid.getCellParticles();
+        int columns = grid.getColumns(), rows = grid.getRows();
+        int touching = 0;
+        for (int row = firstRow; row < endRow; row++) {
+            for (int column = 0; column < columns; column++) {
+                int cell = row * columns + column;
+                int cellEnd = cellStart[cell + 1];
+                for (int k = cellStart[cell]; k < cellEnd; k++) {
+                    int i = cellParticles[k];
+                    // The rest of this cell, then the right neighbour and the three cells below
+                    touching += resolveAgainst(x, y, vx, vy, i, cellParticles, k + 1, cellEnd);
+                    if (column + 1 < columns) {
+                        touching += resolveAgainst(x, y, vx, vy, i, cellParticles, cellStart[cell + 1], cellStart[cell + 2]);
+                    }
+                    if (row + 1 < rows) {
+                        int below = cell + columns;
+                        int from = column > 0 ? below - 1 : below;
+                        int to = column + 1 < columns ? below + 1 : below;
+                        touching += resolveAgainst(x, y, vx, vy, i, cellParticles, cellStart[from], cellStart[to + 1]);
+                    }
+                }
+            }
+        }
+        return touching;
+    }
+
+    private static int resolveAgainst(double[] x, double[] y, double[] vx, double[] vy, int i, int[] cellParticles, int from, int to) {
+        int touching = 0;
+        double px = x[i], py = y[i];
+        for (int m = from; m < to; m++) {
+            int j = cellParticles[m];
+            double dx = x[j] - px, dy = y[j] - py;
+            double distanceSquared = dx * dx + dy * dy;
+            // Particles on the same spot have no contact normal
+            if (distanceSquared >= DIAMETER_SQUARED || distanceSquared == 0) {
+                continue;
+            }
+            // Only pairs still closing in exchange momentum, so an overlap resolves instead of sticking
+            double closing = (vx[i] - vx[j]) * dx + (vy[i] - vy[j]) * dy;
+            if (closing <= 0) {
+                continue;
+            }
+            // Equal masses: the velocity components along the normal are swapped
+            double impulse = closing / distanceSquared;
+            vx[i] -= impulse * dx;
+            vy[i] -= impulse * dy;
+            vx[j] += impulse * dx;
+            vy[j] += impulse * dy;
+            touching++;
+        }
+        return touching;
+    }
+
+    public void clear() {
+        grid.clear();
+        lastContacts = 0;
+    }
+
+    public int getLastContacts() {
+        return lastContacts;
+    }
+}
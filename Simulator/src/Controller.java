@@ -1,24 +1,44 @@
 import java.awt.*;
 import java.util.List;
-import java.util.UUID;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
 
 public class Controller {
-    private List<Ball> particles = new CopyOnWriteArrayList<>();
+    private final IdAllocator idAllocator;
+    private final ParticleStore particles;
+    private SpatialGrid spatialGrid;
+    private CollisionSolver collisionSolver;
+    private final ProximityQuery proximityQuery = new ProximityQuery();
     private Explorer explorer;
 
-    public void addParticle(int x, int y, double angle, double velocity) {
-        String id = UUID.randomUUID().toString();
-        particles.add(new Ball(id, x, y, Math.cos(angle) * velocity, Math.sin(angle) * velocity));
+    public Controller() {
+        this(new IdAllocator());
     }
 
-    public void addParticle(Ball particle) {
-        particles.add(particle);
+    public Controller(IdAllocator idAllocator) {
+        this.idAllocator = idAllocator;
+        this.particles = new ParticleStore(idAllocator);
+    }
+
+    public void setWorldSize(int width, int height) {
+        spatialGrid = new SpatialGrid(width, height);
+        collisionSolver = new CollisionSolver(width, height);
+    }
+
+    public synchronized int addParticle(int x, int y, double angle, double velocity) {
+        return particles.add(x, y, Math.cos(angle) * velocity, Math.sin(angle) * velocity);
+    }
+
+    public synchronized int addParticle(double x, double y, double vx, double vy) {
+        return particles.add(x, y, vx, vy);
+    }
+
+    public synchronized void addParticles(SpawnBatch batch) {
+        particles.append(batch.getX(), batch.getY(), batch.getVx(), batch.getVy(), batch.getCount());
     }
 
     public void addExplorer(int x, int y) {
-        String id = UUID.randomUUID().toString();
-        explorer = new Explorer(id, x, y);
+        explorer = new Explorer(idAllocator.allocate(), x, y);
     }
 
     public Explorer getExplorer() {
@@ -26,58 +46,113 @@ public class Controller {
     }
 
     public void updateParticles(int canvasWidth, int canvasHeight) {
-        for (Ball particle : particles) {
-            particle.update(canvasWidth, canvasHeight);
-        }
+        updateParticles(0, particles.size(), canvasWidth, canvasHeight);
         if (explorer != null) {
             explorer.update(canvasWidth, canvasHeight);
         }
     }
 
-    public List<Ball> getParticles() {
+    public void updateParticles(int from, int to, int canvasWidth, int canvasHeight) {
+        particles.update(from, Math.min(to, particles.size()), canvasWidth, canvasHeight);
+    }
+
+    public ParticleStore getParticles() {
         return particles;
     }
 
-    public void drawParticles(Graphics g, int canvasHeight) {
-        for (Ball particle : particles) {
-            particle.draw(g, canvasHeight, 1.0); // Default alpha to 1.0
+    public SpatialGrid getSpatialGrid() {
+        return spatialGrid;
+    }
+
+    public void rebuildSpatialIndex(ForkJoinPool pool, int partitions) {
+        if (spatialGrid != null) {
+            spatialGrid.rebuild(particles, pool, partitions);
         }
-        if (explorer != null) {
-            explorer.draw(g);
+    }
+
+    public void resolveCollisions(ForkJoinPool pool, int partitions) {
+        if (collisionSolver != null) {
+            collisionSolver.resolve(particles, pool, partitions);
         }
     }
 
-    public void drawParticles(Graphics g, int canvasHeight, double alpha) {
-        for (Ball particle : particles) {
-            particle.draw(g, canvasHeight, alpha);
+    public int getLastCollisionContacts() {
+        return collisionSolver != null ? collisionSolver.getLastContacts() : 0;
+    }
+
+    // Fills every explorer's proximity from the index as of the last rebuild
+    public void updateProximity(List<Explorer> explorers, ForkJoinPool pool, int partitions) {
+        if (spatialGrid != null) {
+            proximityQuery.update(explorers, particles, spatialGrid, pool, partitions);
+        }
+    }
+
+    public ProximityQuery getProximityQuery() {
+        return proximityQuery;
+    }
+
+    // Visits the store index of every particle inside the rectangle, as of the last index rebuild
+    public void forEachParticleInRect(double left, double top, double right, double bottom, IntConsumer visitor) {
+        if (spatialGrid != null) {
+            spatialGrid.query(particles, left, top, right, bottom, visitor);
+            return;
+        }
+        int size = particles.size();
+        double[] x = particles.getX();
+        double[] y = particles.getY();
+        for (int i = 0; i < size; i++) {
+            if (x[i] >= left && x[i] <= right && y[i] >= top && y[i] <= bottom) {
+                visitor.accept(i);
+            }
         }
+    }
+
+    public int getParticleCount() {
+        return particles.size();
+    }
+
+    public void drawParticles(Graphics g, int canvasHeight) {
+        drawParticles(g, canvasHeight, 1.0); // Default alpha to 1.0
+    }
+
+    public void drawParticles(Graphics g, int canvasHeight, double alpha) {
+        drawParticles(g, 0, particles.size());
         if (explorer != null) {
             explorer.draw(g);
         }
     }
 
-    public void clearParticles() {
-        particles.clear();
-        explorer = null;
+    public void drawParticles(Graphics g, int from, int to) {
+        int size = particles.size();
+        double[] x = particles.getX();
+        double[] y = particles.getY();
+        for (int i = from; i < Math.min(to, size); i++) {
+            Ball.draw(g, x[i], y[i]);
+        }
     }
 
-    public void drawParticlesInView(Graphics g, int canvasHeight, int viewLeft, int viewTop, int viewRight, int viewBottom) {
-        for (Ball particle : particles) {
-            if (particle.getX() >= viewLeft && particle.getX() <= viewRight && particle.getY() >= viewTop && particle.getY() <= viewBottom) {
-                particle.draw(g, canvasHeight, 1.0); // Default alpha to 1.0
-            }
+    public synchronized void clearParticles() {
+        particles.clear();
+        if (spatialGrid != null) {
+            spatialGrid.clear();
+        }
+        if (collisionSolver != null) {
+            collisionSolver.clear();
         }
         if (explorer != null) {
-            explorer.draw(g);
+            idAllocator.release(explorer.getId());
         }
+        explorer = null;
+    }
+
+    public void drawParticlesInView(Graphics g, int canvasHeight, int viewLeft, int viewTop, int viewRight, int viewBottom) {
+        drawParticlesInView(g, canvasHeight, viewLeft, viewTop, viewRight, viewBottom, 1.0); // Default alpha to 1.0
     }
 
     public void drawParticlesInView(Graphics g, int canvasHeight, int viewLeft, int viewTop, int viewRight, int viewBottom, double alpha) {
-        for (Ball particle : particles) {
-            if (particle.getX() >= viewLeft && particle.getX() <= viewRight && particle.getY() >= viewTop && particle.getY() <= viewBottom) {
-                particle.draw(g, canvasHeight, alpha);
-            }
-        }
+        double[] x = particles.getX();
+        double[] y = particles.getY();
+        forEachParticleInRect(viewLeft, viewTop, viewRight, viewBottom, i -> Ball.draw(g, x[i], y[i]));
         if (explorer != null) {
             explorer.draw(g);
         }
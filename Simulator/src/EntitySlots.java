@@ -0,0 +1,111 @@
+import java.util.Arrays;
+
+// Client-side entity columns in which an entity keeps its slot until it is removed, so copies of the
+// columns taken at different ticks line up slot by slot. Freed slots hold id -1 and are reused.
+public class EntitySlots {
+    private static final int INITIAL_CAPACITY = 256;
+
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] vx = new double[INITIAL_CAPACITY];
+    private double[] vy = new double[INITIAL_CAPACITY];
+    // Slots in use or freed; everything at or above is unused
+    private int slotCount = 0;
+    private int[] freeSlots = new int[INITIAL_CAPACITY];
+    private int freeCount = 0;
+    private int size = 0;
+    // Maps an id to its slot, -1 when the id is not present
+    private int[] slotById = new int[0];
+
+    // Stores the state under the id's slot, taking a free slot for an id that is not present yet
+    public int put(int id, double x, double y, double vx, double vy) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            slot = freeCount > 0 ? freeSlots[--freeCount] : slotCount++;
+            ensureCapacity(slotCount);
+            mapId(id, slot);
+            ids[slot] = id;
+            size++;
+        }
+        this.x[slot] = x;
+        this.y[slot] = y;
+        this.vx[slot] = vx;
+        this.vy[slot] = vy;
+        return slot;
+    }
+
+    public void remove(int id) {
+        int slot = slotOf(id);
+        if (slot < 0) {
+            return;
+        }
+        slotById[id] = -1;
+        ids[slot] = -1;
+        vx[slot] = 0;
+        vy[slot] = 0;
+        if (freeCount == freeSlots.length) {
+            freeSlots = Arrays.copyOf(freeSlots, freeCount * 2);
+        }
+        freeSlots[freeCount++] = slot;
+        size--;
+    }
+
+    // Advances every slot one server tick; freed slots have no velocity and stay put
+    public void step(int worldWidth, int worldHeight) {
+        ParticleStore.integrate(x, y, vx, vy, 0, slotCount, worldWidth, worldHeight);
+    }
+
+    public int slotOf(int id) {
+        return id >= 0 && id < slotById.length ? slotById[id] : -1;
+    }
+
+    private void mapId(int id, int slot) {
+        if (id >= slotById.length) {
+            int oldLength = slotById.length;
+            slotById = Arrays.copyOf(slotById, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(slotById, oldLength, slotById.length, -1);
+        }
+        slotById[id] = slot;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length * 2);
+        ids = Arrays.copyOf(ids, newCapacity);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVx() {
+        return vx;
+    }
+
+    public double[] getVy() {
+        return vy;
+    }
+}
@@ -1,12 +1,16 @@
 import java.awt.*;
 
 public class Explorer {
-    private String id;
+    private int id;
     private double x, y;
     private double vx, vy;
-    private static final int SIZE = 10;
+    static final int SIZE = 10;
+    // World area shown around an explorer: ExplorerPanel's 1280x720 panel at 2x zoom
+    public static final int VIEW_WIDTH = 640;
+    public static final int VIEW_HEIGHT = 360;
+    private final ExplorerProximity proximity = new ExplorerProximity();
 
-    public Explorer(String id, double x, double y) {
+    public Explorer(int id, double x, double y) {
         this.id = id;
         this.x = x;
         this.y = y;
@@ -25,6 +29,10 @@ public class Explorer {
     }
 
     public void draw(Graphics g) {
+        draw(g, x, y);
+    }
+
+    public static void draw(Graphics g, double x, double y) {
         g.setColor(Color.BLUE);
         g.fillOval((int) x, (int) y, SIZE, SIZE);
     }
@@ -39,7 +47,12 @@ public class Explorer {
         this.y = y;
     }
 
-    public String getId() {
+    // Particles near and touching this explorer as of the last tick
+    public ExplorerProximity getProximity() {
+        return proximity;
+    }
+
+    public int getId() {
         return id;
     }
 
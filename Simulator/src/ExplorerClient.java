@@ -3,13 +3,13 @@ import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.geom.AffineTransform;
 import java.awt.image.BufferedImage;
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
 import java.io.PrintWriter;
-import java.net.Socket;
-import java.util.concurrent.ConcurrentHashMap;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import javax.swing.*;
@@ -17,19 +17,20 @@ import javax.swing.*;
 public class ExplorerClient extends JFrame {
     private ExplorerPanel explorerPanel;
     private PrintWriter out;
-    private final ConcurrentHashMap<String, Explorer> explorers = new ConcurrentHashMap<>();
-    private final ConcurrentHashMap<String, Ball> particles = new ConcurrentHashMap<>();
-    private String controlledExplorerId;
+    private final ClientWorld world;
+    private boolean warnedUnreadable = false;
 
-    public ExplorerClient() {
-        setupUI();
+    public ExplorerClient(double interpolationDelayMillis, int lodThreshold) {
+        world = new ClientWorld(interpolationDelayMillis);
+        setupUI(lodThreshold);
         connectToServer();
     }
 
-    private void setupUI() {
+    private void setupUI(int lodThreshold) {
         setTitle("Explorer Client");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        explorerPanel = new ExplorerPanel(explorers, particles, this);
+        explorerPanel = new ExplorerPanel(world, this);
+        explorerPanel.setLodThreshold(lodThreshold);
         add(explorerPanel);
         setPreferredSize(new Dimension(1280, 720));
         pack();
@@ -40,56 +41,57 @@ public class ExplorerClient extends JFrame {
     private void connectToServer() {
         new Thread(() -> {
             try {
-                Socket socket = new Socket("localhost", 12345);        // <-------------- PUT IPV4 address here to connect to host instead of localhost
-                out = new PrintWriter(socket.getOutputStream(), true);
-                BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
+                SocketChannel channel = SocketChannel.open(new InetSocketAddress("localhost", 12345));        // <-------------- PUT IPV4 address here to connect to host instead of localhost
+                out = new PrintWriter(channel.socket().getOutputStream(), true);
 
                 explorerPanel.setOut(out);
 
-                String message;
-                while ((message = in.readLine()) != null) {
-                    handleServerMessage(message);
+                // Every read is decoded in place and applied as one batch; the panel repaints on its own timer
+                ByteBuffer buffer = ByteBuffer.allocate(256 * 1024);
+                while (channel.read(buffer) >= 0) {
+                    buffer.flip();
+                    int unreadable = world.handleFrames(buffer);
+                    if (unreadable > 0 && !warnedUnreadable) {
+                        warnedUnreadable = true;
+                        System.out.println("Ignoring frames the client cannot read; is the server running a different version?");
+                    }
+                    buffer.compact();
+                    if (!buffer.hasRemaining()) {
+                        // A single frame larger than the buffer
+                        ByteBuffer grown = ByteBuffer.allocate(buffer.capacity() * 2);
+                        buffer.flip();
+                        grown.put(buffer);
+                        buffer = grown;
+                    }
                 }
+                System.out.println("Disconnected from server");
             } catch (IOException e) {
                 e.printStackTrace();
             }
         }).start();
     }
 
-    private void handleServerMessage(String message) {
-        System.out.println("Received message: " + message);
-
-        String[] parts = message.split(": ");
-        if (parts.length == 2) {
-            if (parts[0].equals("CONTROLLED_EXPLORER")) {
-                controlledExplorerId = parts[1];
+    // Optional: --interpolation-delay <ms>, how far behind the newest server tick to render, and
+    // --lod-threshold <count>, the particles in view above which the view is drawn as a density map
+    public static void main(String[] args) {
+        double interpolationDelayMillis = -1;
+        int lodThreshold = RasterRenderer.DEFAULT_LOD_THRESHOLD;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 < args.length && args[i].equals("--interpolation-delay")) {
+                interpolationDelayMillis = Double.parseDouble(args[i + 1]);
+            } else if (i + 1 < args.length && args[i].equals("--lod-threshold")) {
+                lodThreshold = Integer.parseInt(args[i + 1]);
             } else {
-                String[] data = parts[1].split(", ");
-                if (data.length == 3 && parts[0].equals("EXPLORER")) {
-                    String id = data[0];
-                    double x = Double.parseDouble(data[1]);
-                    double y = Double.parseDouble(data[2]);
-                    explorers.put(id, new Explorer(id, x, y));
-                } else if (data.length == 5) {
-                    String id = data[0];
-                    double x = Double.parseDouble(data[1]);
-                    double y = Double.parseDouble(data[2]);
-                    double vx = Double.parseDouble(data[3]);
-                    double vy = Double.parseDouble(data[4]);
-                    particles.put(id, new Ball(id, (int) x, (int) y, vx, vy));
-                }
+                System.err.println("Usage: java ExplorerClient [--interpolation-delay <ms>] (default "
+                    + ClientWorld.DEFAULT_INTERPOLATION_DELAY_TICKS + " server ticks) [--lod-threshold <count>] (default "
+                    + RasterRenderer.DEFAULT_LOD_THRESHOLD + ")");
+                System.exit(1);
             }
         }
-        explorerPanel.repaint();
-    }
-
-    public Explorer getControlledExplorer() {
-        return explorers.get(controlledExplorerId);
-    }
-
-    public static void main(String[] args) {
+        double delay = interpolationDelayMillis;
+        int threshold = lodThreshold;
         EventQueue.invokeLater(() -> {
-            ExplorerClient clientFrame = new ExplorerClient();
+            ExplorerClient clientFrame = new ExplorerClient(delay, threshold);
             clientFrame.setVisible(true);
         });
     }
@@ -97,18 +99,23 @@ public class ExplorerClient extends JFrame {
 
 
 class ExplorerPanel extends JPanel {
-    private final ConcurrentHashMap<String, Explorer> explorers;
-    private final ConcurrentHashMap<String, Ball> particles;
-    private BufferedImage bufferImage;
+    private final ClientWorld world;
+    // The view is the world at 2x zoom, centered on the controlled explorer
+    private static final int VIEW_SCALE = 2;
+    private final RasterRenderer particleRenderer = new RasterRenderer(new Color(173, 216, 230, 255), Color.BLACK);
+    private double[] drawX = new double[0], drawY = new double[0];
+    // View of the frame being painted, set by renderFrame
+    private boolean hasView;
+    private ClientSnapshot viewFrom, viewTo;
+    private double viewAlpha, originX, originY;
     private PrintWriter out;
     private final ExplorerClient client;
     private FPS fpsTracker;
     private long lastUpdateTime = System.currentTimeMillis();
     private ScheduledExecutorService executor;
 
-    public ExplorerPanel(ConcurrentHashMap<String, Explorer> explorers, ConcurrentHashMap<String, Ball> particles, ExplorerClient client) {
-        this.explorers = explorers;
-        this.particles = particles;
+    public ExplorerPanel(ClientWorld world, ExplorerClient client) {
+        this.world = world;
         this.client = client;
         this.fpsTracker = new FPS();
         setFocusable(true);
@@ -116,6 +123,10 @@ class ExplorerPanel extends JPanel {
         startRenderLoop();
     }
 
+    public void setLodThreshold(int lodThreshold) {
+        particleRenderer.setLodThreshold(lodThreshold);
+    }
+
     private void startRenderLoop() {
         executor = Executors.newScheduledThreadPool(1);
         executor.scheduleAtFixedRate(this::updateAndRepaint, 0, 16, TimeUnit.MILLISECONDS);
@@ -130,71 +141,109 @@ class ExplorerPanel extends JPanel {
         long currentTime = System.currentTimeMillis();
         lastUpdateTime = currentTime;
 
-        for (Explorer explorer : explorers.values()) {
-            explorer.update(getWidth(), getHeight());
-        }
-        for (Ball particle : particles.values()) {
-            particle.update(getWidth(), getHeight());
-        }
-
+        // Nothing is simulated here; ClientWorld keeps the server ticks and paint interpolates between them
         fpsTracker.update();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
-        if (bufferImage == null || bufferImage.getWidth() != getWidth() || bufferImage.getHeight() != getHeight()) {
-            bufferImage = new BufferedImage(getWidth(), getHeight(), BufferedImage.TYPE_INT_ARGB);
+        ClientSnapshot[] snapshots = world.acquireSnapshots();
+        try {
+            BufferedImage frame = renderFrame(snapshots);
+            Graphics2D g2d = frame.createGraphics();
+            if (hasView) {
+                setupViewTransform(g2d);
+                drawExplorersInView(g2d);
+                resetViewTransform(g2d);
+            }
+            drawHUD(g2d);
+            g2d.dispose();
+            g.drawImage(frame, 0, 0, this);
+        } finally {
+            world.releaseSnapshots(snapshots);
         }
-        Graphics2D g2d = bufferImage.createGraphics();
-
-        g2d.setColor(Color.BLACK);
-        g2d.fillRect(0, 0, getWidth(), getHeight()); // Clear the screen
+    }
 
-        renderExplorersAndParticles(g2d);
-        drawHUD(g2d);
+    // Rasterizes the particles around the controlled explorer, blended between the two snapshots around the render tick
+    private BufferedImage renderFrame(ClientSnapshot[] snapshots) {
+        hasView = false;
+        if (snapshots.length > 0) {
+            // Walk back to the two snapshots around the render tick; past the newest one the view holds still
+            double renderTick = world.renderTick(System.nanoTime());
+            ClientSnapshot to = snapshots[0], from = to;
+            for (int k = 1; k < snapshots.length && from.getTick() > renderTick; k++) {
+                to = from;
+                from = snapshots[k];
+            }
+            viewFrom = from;
+            viewTo = to;
+            viewAlpha = from == to ? 0 : Math.max(0, Math.min(1, (renderTick - from.getTick()) / (to.getTick() - from.getTick())));
+
+            int mainSlot = to.explorerSlot(world.getControlledExplorerId());
+            if (mainSlot >= 0) {
+                int fromSlots = from.getExplorerSlotCount();
+                double mainX = lerp(from.getExplorerIds(), fromSlots, from.getExplorerX(), to.getExplorerIds(), to.getExplorerX(), mainSlot, viewAlpha);
+                double mainY = lerp(from.getExplorerIds(), fromSlots, from.getExplorerY(), to.getExplorerIds(), to.getExplorerY(), mainSlot, viewAlpha);
+                originX = mainX - getWidth() / (2.0 * VIEW_SCALE);
+                originY = mainY - getHeight() / (2.0 * VIEW_SCALE);
+                hasView = true;
+            }
+        }
 
-        g.drawImage(bufferImage, 0, 0, this);
-        g2d.dispose();
+        int count = hasView ? blendParticles(viewFrom, viewTo, viewAlpha) : 0;
+        return particleRenderer.render(ForkJoinPool.commonPool(), getWidth(), getHeight(), count, drawX, drawY, originX, originY, VIEW_SCALE);
     }
 
-    private void renderExplorersAndParticles(Graphics2D g2d) {
-        Explorer mainExplorer = client.getControlledExplorer();
-
-        if (mainExplorer != null) {
-            setupViewTransform(g2d, mainExplorer);
-            drawParticlesInView(g2d);
-            drawExplorersInView(g2d);
-            resetViewTransform(g2d);
+    // Fills drawX / drawY with the blended position of every live particle slot and returns how many there are
+    private int blendParticles(ClientSnapshot from, ClientSnapshot to, double alpha) {
+        int[] fromIds = from.getParticleIds(), toIds = to.getParticleIds();
+        double[] fromX = from.getParticleX(), fromY = from.getParticleY();
+        double[] toX = to.getParticleX(), toY = to.getParticleY();
+        int fromSlots = from.getParticleSlotCount(), toSlots = to.getParticleSlotCount();
+        if (drawX.length < toSlots) {
+            drawX = new double[toSlots];
+            drawY = new double[toSlots];
+        }
+        int count = 0;
+        for (int slot = 0; slot < toSlots; slot++) {
+            if (toIds[slot] >= 0) {
+                drawX[count] = lerp(fromIds, fromSlots, fromX, toIds, toX, slot, alpha);
+                drawY[count] = lerp(fromIds, fromSlots, fromY, toIds, toY, slot, alpha);
+                count++;
+            }
         }
+        return count;
     }
 
-    private void setupViewTransform(Graphics2D g2d, Explorer mainExplorer) {
-        int explorerX = (int) mainExplorer.getX();
-        int explorerY = (int) mainExplorer.getY();
-        double scale = 2.0;
-        int translateX = (int) ((getWidth() / scale) / 2 - explorerX);
-        int translateY = (int) ((getHeight() / scale) / 2 - explorerY);
+    // Position in the newer snapshot, moved back towards the older one when the slot held the same entity there
+    private static double lerp(int[] fromIds, int fromSlots, double[] from, int[] toIds, double[] to, int slot, double alpha) {
+        if (slot < fromSlots && fromIds[slot] == toIds[slot]) {
+            return from[slot] + (to[slot] - from[slot]) * alpha;
+        }
+        return to[slot];
+    }
 
-        g2d.scale(scale, scale);
-        g2d.translate(translateX, translateY);
+    private void setupViewTransform(Graphics2D g2d) {
+        g2d.scale(VIEW_SCALE, VIEW_SCALE);
+        g2d.translate(-originX, -originY);
     }
 
     private void resetViewTransform(Graphics2D g2d) {
         g2d.setTransform(new AffineTransform());
     }
 
-    private void drawParticlesInView(Graphics2D g2d) {
-        Color saiyanBlue = new Color(173, 216, 230, 255);
-        g2d.setColor(saiyanBlue);
-        for (Ball particle : particles.values()) {
-            particle.draw(g2d, getHeight(), 1.0);
-        }
-    }
-
     private void drawExplorersInView(Graphics2D g2d) {
-        for (Explorer explorer : explorers.values()) {
-            explorer.draw(g2d);
+        ClientSnapshot from = viewFrom, to = viewTo;
+        double alpha = viewAlpha;
+        int[] fromIds = from.getExplorerIds(), toIds = to.getExplorerIds();
+        double[] fromX = from.getExplorerX(), fromY = from.getExplorerY();
+        double[] toX = to.getExplorerX(), toY = to.getExplorerY();
+        int fromSlots = from.getExplorerSlotCount(), toSlots = to.getExplorerSlotCount();
+        for (int slot = 0; slot < toSlots; slot++) {
+            if (toIds[slot] >= 0) {
+                Explorer.draw(g2d, lerp(fromIds, fromSlots, fromX, toIds, toX, slot, alpha), lerp(fromIds, fromSlots, fromY, toIds, toY, slot, alpha));
+            }
         }
     }
 
@@ -206,6 +255,7 @@ class ExplorerPanel extends JPanel {
         // Mode display
         String modeText = "Mode: Explorer";
         g2d.drawString(modeText, 10, 20); // Positioned at top left
+        g2d.drawString(String.format("Nearby: %d  Touching: %d", world.getNearbyCount(), world.getContactIds().length), 10, 40);
     
     
     
@@ -226,7 +276,7 @@ class ExplorerPanel extends JPanel {
         g2d.drawString(fpsText, 10, yOffset);
     
         // Particles display
-        String particlesText = String.format("Particles: %d", particles.size());
+        String particlesText = String.format("Particles: %d", world.getParticleCount());
         g2d.setColor(Color.BLACK);
         g2d.drawString(particlesText, 151, yOffset + 1);
         g2d.setColor(new Color(255, 215, 0));
@@ -0,0 +1,45 @@
+// A client input for one explorer; queued by the network threads and applied by the tick thread
+public class ExplorerCommand {
+    private final Explorer explorer;
+    private final int vx, vy;
+
+    public ExplorerCommand(Explorer explorer, int vx, int vy) {
+        this.explorer = explorer;
+        this.vx = vx;
+        this.vy = vy;
+    }
+
+    // Maps a client command line to the velocity it sets; null for unknown commands
+    public static ExplorerCommand parse(Explorer explorer, String message) {
+        switch (message) {
+            case "MOVE_UP":
+                return new ExplorerCommand(explorer, 0, -5);
+            case "MOVE_DOWN":
+                return new ExplorerCommand(explorer, 0, 5);
+            case "MOVE_LEFT":
+                return new ExplorerCommand(explorer, -5, 0);
+            case "MOVE_RIGHT":
+                return new ExplorerCommand(explorer, 5, 0);
+            case "STOP_MOVE":
+                return new ExplorerCommand(explorer, 0, 0);
+            default:
+                return null;
+        }
+    }
+
+    public void apply() {
+        explorer.setVelocity(vx, vy);
+    }
+
+    public Explorer getExplorer() {
+        return explorer;
+    }
+
+    public int getVx() {
+        return vx;
+    }
+
+    public int getVy() {
+        return vy;
+    }
+}
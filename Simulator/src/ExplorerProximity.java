@@ -0,0 +1,39 @@
+import java.util.Arrays;
+
+// What an explorer had around it at the end of the last tick: how many particles lie within the proximity
+// radius of its centre and the ids of those touching it. Written by the tick under the write lock, read under
+// the read lock.
+public class ExplorerProximity {
+    private int nearbyCount = 0;
+    private int[] contactIds = new int[0];
+    private int contactCount = 0;
+
+    void reset() {
+        nearbyCount = 0;
+        contactCount = 0;
+    }
+
+    void setNearbyCount(int nearbyCount) {
+        this.nearbyCount = nearbyCount;
+    }
+
+    void addContact(int id) {
+        if (contactCount == contactIds.length) {
+            contactIds = Arrays.copyOf(contactIds, Math.max(4, contactCount * 2));
+        }
+        contactIds[contactCount++] = id;
+    }
+
+    public int getNearbyCount() {
+        return nearbyCount;
+    }
+
+    // Valid up to getContactCount()
+    public int[] getContactIds() {
+        return contactIds;
+    }
+
+    public int getContactCount() {
+        return contactCount;
+    }
+}
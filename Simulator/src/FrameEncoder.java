@@ -0,0 +1,308 @@
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+// Builds server frames into reusable buffers, one per frame type; a returned buffer is only valid
+// until the next call that encodes the same frame type
+public class FrameEncoder {
+    // Never produced by a live particle, whose quantized y is always above zero, nor by an explorer,
+    // whose packed state carries a non-zero marker in place of a velocity
+    private static final long NOT_SENT = Long.MIN_VALUE;
+    private static final short EXPLORER_MARKER = 1;
+    // Record count of a PARTICLES, PARTICLES_* or EXPLORERS frame, right after the tick
+    private static final int COUNT_POSITION = Protocol.HEADER_SIZE + 8;
+
+    private final int positionScale;
+    private final byte updateMode;
+    private final int particleRecordSize;
+    private ByteBuffer particleBuffer = ByteBuffer.allocate(64 * 1024);
+    private ByteBuffer explorerBuffer = ByteBuffer.allocate(1024);
+    private ByteBuffer proximityBuffer = ByteBuffer.allocate(256);
+    // Last state sent per particle id: x, y, vx, vy quantized to 16 bits each, or in dead reckoning mode
+    // just the velocity as two float bit patterns
+    private long[] lastSentParticles = new long[0];
+    private long[] lastSentExplorers = new long[0];
+    // Proximity as of the last PROXIMITY frame; the nearby count starts negative so the first one is always sent
+    private int lastSentNearby = -1;
+    private int[] lastSentContacts = new int[0];
+    private int lastSentContactCount = 0;
+
+    // Area of interest state: the ids inside the area as of the previous encode, and per id the
+    // encode generation that last saw it inside
+    private ByteBuffer enterBuffer = ByteBuffer.allocate(1024);
+    private ByteBuffer leaveBuffer = ByteBuffer.allocate(1024);
+    private int[] visibleIds = new int[0];
+    private int[] nextVisibleIds = new int[0];
+    private int visibleCount = 0, nextVisibleCount = 0;
+    private int[] visibleGeneration = new int[0];
+    private int generation = 1;
+    // Store generation as of the previous encode
+    private int areaStoreGeneration = 0;
+    private int enterCount, updateCount;
+    private ParticleStore areaParticles;
+    private final IntConsumer areaVisitor = this::visitAreaParticle;
+
+    public FrameEncoder(int positionScale) {
+        this(positionScale, Protocol.UPDATE_STATE);
+    }
+
+    // updateMode only affects area encoding; encodeParticles always writes quantized state records
+    public FrameEncoder(int positionScale, byte updateMode) {
+        this.positionScale = positionScale;
+        this.updateMode = updateMode;
+        this.particleRecordSize = Protocol.particleRecordSize(updateMode);
+    }
+
+    public int getPositionScale() {
+        return positionScale;
+    }
+
+    public static ByteBuffer encodeHello(int controlledExplorerId, int worldWidth, int worldHeight, int tickRate, int positionScale, byte updateMode) {
+        ByteBuffer hello = ByteBuffer.allocate(Protocol.HELLO_SIZE);
+        hello.putInt(Protocol.HELLO_SIZE - Protocol.LENGTH_SIZE);
+        hello.put(Protocol.VERSION).put(Protocol.HELLO);
+        hello.putInt(controlledExplorerId).putInt(worldWidth).putInt(worldHeight).putInt(tickRate).putInt(positionScale).put(updateMode);
+        hello.flip();
+        return hello;
+    }
+
+    // With deltaOnly, only particles whose quantized state changed since the last delta are written
+    public ByteBuffer encodeParticles(ParticleStore particles, long tick, boolean deltaOnly) {
+        int size = particles.size();
+        int[] ids = particles.getIds();
+        double[] x = particles.getX(), y = particles.getY(), vx = particles.getVx(), vy = particles.getVy();
+
+        ByteBuffer buffer = particleBuffer = begin(particleBuffer, Protocol.PARTICLES, tick, size, Protocol.PARTICLE_RECORD_SIZE);
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            int id = ids[i];
+            char qx = Protocol.quantizePosition(x[i], positionScale);
+            char qy = Protocol.quantizePosition(y[i], positionScale);
+            short qvx = Protocol.quantizeVelocity(vx[i]);
+            short qvy = Protocol.quantizeVelocity(vy[i]);
+            if (deltaOnly) {
+                long packed = pack(qx, qy, qvx, qvy);
+                lastSentParticles = ensureCapacity(lastSentParticles, id);
+                if (lastSentParticles[id] == packed) {
+                    continue;
+                }
+                lastSentParticles[id] = packed;
+            }
+            buffer.putInt(id).putChar(qx).putChar(qy).putShort(qvx).putShort(qvy);
+            count++;
+        }
+        return finish(buffer, COUNT_POSITION, count);
+    }
+
+    // Encodes the particles inside the rectangle for one client: PARTICLES_ENTER for particles that were
+    // outside on the previous call, PARTICLES for the ones that stayed inside and changed, and
+    // PARTICLES_LEAVE for the ones that are gone. Cost scales with the particles in the area, not the world.
+    // The enter and leave frames are only returned when they are not empty. The encoder remembers what it
+    // sent, so every client needs an encoder of its own.
+    public ByteBuffer[] encodeParticlesInArea(ParticleStore particles, SpatialGrid grid, double left, double top,
+                                              double right, double bottom, long tick) {
+        // After a clear the ids in the area may name new particles whose velocity happens to match the old ones,
+        // so skipping a generation makes every particle in the area enter again
+        boolean cleared = particles.getGeneration() != areaStoreGeneration;
+        areaStoreGeneration = particles.getGeneration();
+        generation += cleared ? 2 : 1;
+        if (generation >= Integer.MAX_VALUE - 1) {
+            // Renumber before wrapping around, keeping only the previous area as visible
+            Arrays.fill(visibleGeneration, 0);
+            for (int k = 0; k < visibleCount; k++) {
+                visibleGeneration[visibleIds[k]] = 1;
+            }
+            generation = cleared ? 3 : 2;
+        }
+        enterBuffer = begin(enterBuffer, Protocol.PARTICLES_ENTER, tick, 0, 0);
+        particleBuffer = begin(particleBuffer, Protocol.PARTICLES, tick, 0, 0);
+        enterCount = 0;
+        updateCount = 0;
+        nextVisibleCount = 0;
+        areaParticles = particles;
+        if (grid != null) {
+            grid.query(particles, left, top, right, bottom, areaVisitor);
+        }
+        areaParticles = null;
+
+        leaveBuffer = begin(leaveBuffer, Protocol.PARTICLES_LEAVE, tick, visibleCount, Protocol.PARTICLE_LEAVE_RECORD_SIZE);
+        int leaveCount = 0;
+        for (int k = 0; k < visibleCount; k++) {
+            int id = visibleIds[k];
+            if (visibleGeneration[id] != generation) {
+                leaveBuffer.putInt(id);
+                leaveCount++;
+            }
+        }
+
+        int[] swap = visibleIds;
+        visibleIds = nextVisibleIds;
+        nextVisibleIds = swap;
+        visibleCount = nextVisibleCount;
+
+        ByteBuffer enter = finish(enterBuffer, COUNT_POSITION, enterCount);
+        ByteBuffer update = finish(particleBuffer, COUNT_POSITION, updateCount);
+        ByteBuffer leave = finish(leaveBuffer, COUNT_POSITION, leaveCount);
+        if (enterCount > 0 && leaveCount > 0) {
+            return new ByteBuffer[]{enter, update, leave};
+        } else if (enterCount > 0) {
+            return new ByteBuffer[]{enter, update};
+        } else if (leaveCount > 0) {
+            return new ByteBuffer[]{update, leave};
+        }
+        return new ByteBuffer[]{update};
+    }
+
+    private void visitAreaParticle(int index) {
+        ParticleStore particles = areaParticles;
+        int id = particles.getIds()[index];
+        long state;
+        if (updateMode == Protocol.UPDATE_DEAD_RECKONING) {
+            // Between velocity changes the client extrapolates on its own
+            state = ((long) Float.floatToIntBits((float) particles.getVx()[index]) << 32)
+                | (Float.floatToIntBits((float) particles.getVy()[index]) & 0xFFFFFFFFL);
+        } else {
+            state = pack(Protocol.quantizePosition(particles.getX()[index], positionScale),
+                Protocol.quantizePosition(particles.getY()[index], positionScale),
+                Protocol.quantizeVelocity(particles.getVx()[index]),
+                Protocol.quantizeVelocity(particles.getVy()[index]));
+        }
+
+        if (id >= visibleGeneration.length) {
+            visibleGeneration = Arrays.copyOf(visibleGeneration, Math.max(id + 1, visibleGeneration.length * 2));
+        }
+        lastSentParticles = ensureCapacity(lastSentParticles, id);
+        boolean entering = visibleGeneration[id] != generation - 1;
+        visibleGeneration[id] = generation;
+        if (nextVisibleCount == nextVisibleIds.length) {
+            nextVisibleIds = Arrays.copyOf(nextVisibleIds, Math.max(64, nextVisibleCount * 2));
+        }
+        nextVisibleIds[nextVisibleCount++] = id;
+
+        if (entering) {
+            enterBuffer = putAreaParticle(enterBuffer, particles, index, id);
+            enterCount++;
+        } else if (lastSentParticles[id] != state) {
+            particleBuffer = putAreaParticle(particleBuffer, particles, index, id);
+            updateCount++;
+        }
+        lastSentParticles[id] = state;
+    }
+
+    private ByteBuffer putAreaParticle(ByteBuffer buffer, ParticleStore particles, int index, int id) {
+        buffer = reserve(buffer, particleRecordSize);
+        buffer.putInt(id);
+        if (updateMode == Protocol.UPDATE_DEAD_RECKONING) {
+            buffer.putFloat((float) particles.getX()[index]).putFloat((float) particles.getY()[index])
+                .putFloat((float) particles.getVx()[index]).putFloat((float) particles.getVy()[index]);
+        } else {
+            buffer.putChar(Protocol.quantizePosition(particles.getX()[index], positionScale))
+                .putChar(Protocol.quantizePosition(particles.getY()[index], positionScale))
+                .putShort(Protocol.quantizeVelocity(particles.getVx()[index]))
+                .putShort(Protocol.quantizeVelocity(particles.getVy()[index]));
+        }
+        return buffer;
+    }
+
+    public ByteBuffer encodeExplorers(List<Explorer> explorers, long tick, boolean deltaOnly) {
+        ByteBuffer buffer = explorerBuffer = begin(explorerBuffer, Protocol.EXPLORERS, tick, explorers.size(), Protocol.EXPLORER_RECORD_SIZE);
+        int count = 0;
+        for (Explorer explorer : explorers) {
+            int id = explorer.getId();
+            char qx = Protocol.quantizePosition(explorer.getX(), positionScale);
+            char qy = Protocol.quantizePosition(explorer.getY(), positionScale);
+            if (deltaOnly) {
+                long packed = pack(qx, qy, EXPLORER_MARKER, (short) 0);
+                lastSentExplorers = ensureCapacity(lastSentExplorers, id);
+                if (lastSentExplorers[id] == packed) {
+                    continue;
+                }
+                lastSentExplorers[id] = packed;
+            }
+            buffer.putInt(id).putChar(qx).putChar(qy);
+            count++;
+        }
+        return finish(buffer, COUNT_POSITION, count);
+    }
+
+    // Returns null when the proximity is the one sent last
+    public ByteBuffer encodeProximity(ExplorerProximity proximity, long tick) {
+        int nearby = proximity.getNearbyCount();
+        int contactCount = proximity.getContactCount();
+        int[] contacts = proximity.getContactIds();
+        if (nearby == lastSentNearby && sameContacts(contacts, contactCount)) {
+            return null;
+        }
+        lastSentNearby = nearby;
+        if (lastSentContacts.length < contactCount) {
+            lastSentContacts = new int[Math.max(contactCount, lastSentContacts.length * 2)];
+        }
+        System.arraycopy(contacts, 0, lastSentContacts, 0, contactCount);
+        lastSentContactCount = contactCount;
+
+        ByteBuffer buffer = proximityBuffer = begin(proximityBuffer, Protocol.PROXIMITY, tick, contactCount + 1, Protocol.CONTACT_RECORD_SIZE);
+        buffer.putInt(nearby);
+        for (int i = 0; i < contactCount; i++) {
+            buffer.putInt(contacts[i]);
+        }
+        return finish(buffer, COUNT_POSITION, contactCount);
+    }
+
+    private boolean sameContacts(int[] contacts, int contactCount) {
+        if (contactCount != lastSentContactCount) {
+            return false;
+        }
+        for (int i = 0; i < contactCount; i++) {
+            if (contacts[i] != lastSentContacts[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer begin(ByteBuffer buffer, byte type, long tick, int maxRecords, int recordSize) {
+        int capacity = Protocol.HEADER_SIZE + 12 + maxRecords * recordSize;
+        if (buffer.capacity() < capacity) {
+            buffer = ByteBuffer.allocate(Math.max(capacity, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.putInt(0);
+        buffer.put(Protocol.VERSION).put(type);
+        buffer.putLong(tick);
+        buffer.putInt(0);
+        return buffer;
+    }
+
+    // Grows a buffer that is being written, keeping what was already written
+    private static ByteBuffer reserve(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) {
+            return buffer;
+        }
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+
+    private static ByteBuffer finish(ByteBuffer buffer, int countPosition, int count) {
+        buffer.putInt(countPosition, count);
+        buffer.putInt(0, buffer.position() - Protocol.LENGTH_SIZE);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static long pack(char x, char y, short vx, short vy) {
+        return ((long) x << 48) | ((long) y << 32) | ((long) (vx & 0xFFFF) << 16) | (vy & 0xFFFF);
+    }
+
+    private static long[] ensureCapacity(long[] lastSent, int id) {
+        if (id < lastSent.length) {
+            return lastSent;
+        }
+        int oldLength = lastSent.length;
+        long[] grown = Arrays.copyOf(lastSent, Math.max(id + 1, oldLength * 2));
+        Arrays.fill(grown, oldLength, grown.length, NOT_SENT);
+        return grown;
+    }
+}
@@ -0,0 +1,84 @@
+import java.util.Arrays;
+import java.util.List;
+
+// The simulation as of one tick, copied for the render thread. A published frame is never written again
+// until the renderer hands it back, so it can be drawn without holding the state lock.
+public class FrameSnapshot {
+    private long tick;
+    private long tickNanos;
+    private int particleCount;
+    private double[] x = new double[0], y = new double[0];
+    private int explorerCount;
+    private double[] explorerX = new double[0], explorerY = new double[0];
+    private int[] explorerNearby = new int[0], explorerContacts = new int[0];
+
+    void capture(long tick, long tickNanos, ParticleStore particles, List<Explorer> explorers) {
+        this.tick = tick;
+        this.tickNanos = tickNanos;
+        int count = particles.size();
+        if (x.length < count) {
+            int capacity = Math.max(count, x.length + (x.length >> 1));
+            x = new double[capacity];
+            y = new double[capacity];
+        }
+        System.arraycopy(particles.getX(), 0, x, 0, count);
+        System.arraycopy(particles.getY(), 0, y, 0, count);
+        particleCount = count;
+
+        int explorerCount = 0;
+        for (Explorer explorer : explorers) {
+            if (explorerCount == explorerX.length) {
+                explorerX = Arrays.copyOf(explorerX, Math.max(4, explorerCount * 2));
+                explorerY = Arrays.copyOf(explorerY, explorerX.length);
+                explorerNearby = Arrays.copyOf(explorerNearby, explorerX.length);
+                explorerContacts = Arrays.copyOf(explorerContacts, explorerX.length);
+            }
+            explorerX[explorerCount] = explorer.getX();
+            explorerY[explorerCount] = explorer.getY();
+            explorerNearby[explorerCount] = explorer.getProximity().getNearbyCount();
+            explorerContacts[explorerCount] = explorer.getProximity().getContactCount();
+            explorerCount++;
+        }
+        this.explorerCount = explorerCount;
+    }
+
+    public long getTick() {
+        return tick;
+    }
+
+    public long getTickNanos() {
+        return tickNanos;
+    }
+
+    public int getParticleCount() {
+        return particleCount;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public int getExplorerCount() {
+        return explorerCount;
+    }
+
+    public double[] getExplorerX() {
+        return explorerX;
+    }
+
+    public double[] getExplorerY() {
+        return explorerY;
+    }
+
+    public int[] getExplorerNearby() {
+        return explorerNearby;
+    }
+
+    public int[] getExplorerContacts() {
+        return explorerContacts;
+    }
+}
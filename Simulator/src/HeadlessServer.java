@@ -0,0 +1,255 @@
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class HeadlessServer {
+    private static final String USAGE = String.join(System.lineSeparator(),
+        "Usage: java HeadlessServer [options]",
+        "  --width <px>                         world width (default 1280)",
+        "  --height <px>                        world height (default 720)",
+        "  --tick-rate <hz>                     simulation ticks per second (default " + ThreadController.DEFAULT_TICK_RATE + ")",
+        "  --port <port>                        server port (default " + Server.PORT + ")",
+        "  --updates dead-reckoning|state       send particles only when they bounce, or whenever they move (default dead-reckoning)",
+        "  --integration scalar|vector|auto     particle step kernel; vector needs --add-modules jdk.incubator.vector (default auto)",
+        "  --collisions on|off                  elastic collisions between particles (default off)",
+        "  --proximity-radius <px>              distance from an explorer within which particles count as near (default " + (int) ProximityQuery.DEFAULT_RADIUS + ")",
+        "  --metrics-port <port>                loopback port of the plain-text metrics, -1 for JMX only (default " + Metrics.DEFAULT_PORT + ")",
+        "  --checkpoint <file>|none             file the simulation is saved to and restored from at startup (default " + Checkpointer.DEFAULT_PATH + ")",
+        "  --checkpoint-interval <seconds>      time between checkpoints, 0 for shutdown only (default " + Checkpointer.DEFAULT_INTERVAL_SECONDS + ")",
+        "  --journal <file>                     record every input, stamped with its tick, for --replay (default off)",
+        "  --replay <file>                      re-run a journal as fast as possible, check it against its checksums and exit",
+        "  --particles n,x,y,angle,velocity     n particles at one point",
+        "  --distance n,x1,y1,x2,y2,angle,velocity",
+        "  --angle n,x,y,startAngle,endAngle,velocity",
+        "  --velocity n,x,y,angle,startVelocity,endVelocity",
+        "Batch options may be repeated. Angles are in degrees and y is measured from the bottom, as in the Particle Manager window.",
+        "They are skipped when the simulation is restored from a checkpoint.");
+
+    public static void main(String[] args) {
+        int width = 1280;
+        int height = 720;
+        int tickRate = ThreadController.DEFAULT_TICK_RATE;
+        int port = Server.PORT;
+        byte updateMode = Protocol.UPDATE_DEAD_RECKONING;
+        int metricsPort = Metrics.DEFAULT_PORT;
+        boolean collisions = false;
+        double proximityRadius = ProximityQuery.DEFAULT_RADIUS;
+        String integration = "auto";
+        String checkpoint = Checkpointer.DEFAULT_PATH;
+        int checkpointInterval = Checkpointer.DEFAULT_INTERVAL_SECONDS;
+        String journal = null;
+        String replay = null;
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            if (i + 1 >= args.length) {
+                exitWithUsage("Missing value for " + args[i]);
+            }
+            switch (args[i]) {
+                case "--width":
+                    width = parseInt(args[++i]);
+                    break;
+                case "--height":
+                    height = parseInt(args[++i]);
+                    break;
+                case "--tick-rate":
+                    tickRate = parseInt(args[++i]);
+                    break;
+                case "--port":
+                    port = parseInt(args[++i]);
+                    break;
+                case "--updates":
+                    updateMode = parseUpdateMode(args[++i]);
+                    break;
+                case "--metrics-port":
+                    metricsPort = parseInt(args[++i]);
+                    break;
+                case "--collisions":
+                    collisions = parseSwitch(args[++i]);
+                    break;
+                case "--integration":
+                    integration = args[++i];
+                    if (!IntegrationKernel.isKnown(integration)) {
+                        exitWithUsage("Unknown integration kernel: " + integration);
+                    }
+                    break;
+                case "--checkpoint":
+                    checkpoint = args[++i];
+                    break;
+                case "--checkpoint-interval":
+                    checkpointInterval = parseInt(args[++i]);
+                    break;
+                case "--journal":
+                    journal = args[++i];
+                    break;
+                case "--replay":
+                    replay = args[++i];
+                    break;
+                case "--proximity-radius":
+                    proximityRadius = parseDouble(args[++i]);
+                    break;
+                case "--particles":
+                case "--distance":
+                case "--angle":
+                case "--velocity":
+                    // Batches need the world size, so they are applied in a second pass
+                    i++;
+                    break;
+                default:
+                    exitWithUsage("Unknown option " + args[i]);
+            }
+        }
+
+        ThreadController threadManager = new ThreadController();
+        threadManager.setCanvasSize(width, height);
+        threadManager.setCollisionsEnabled(collisions);
+        threadManager.setProximityRadius(proximityRadius);
+        threadManager.setIntegrationKernel(IntegrationKernel.forName(integration));
+        if (replay != null) {
+            replay(threadManager, Paths.get(replay));
+            return;
+        }
+
+        Checkpointer checkpointer = checkpoint.equals("none") ? null : new Checkpointer(threadManager, Paths.get(checkpoint));
+        boolean restored = checkpointer != null && checkpointer.restore();
+        if (journal != null) {
+            startJournal(threadManager, Paths.get(journal));
+        }
+        int total;
+        if (restored) {
+            total = threadManager.getParticleSize();
+        } else {
+            total = 0;
+            for (int i = 0; i + 1 < args.length; i += 2) {
+                total += addBatch(threadManager, args[i], args[i + 1], height);
+            }
+        }
+
+        threadManager.start(tickRate);
+        System.out.println("Headless simulation started: " + width + "x" + height + " at " + tickRate + " ticks/s with " + total + " particles, "
+            + threadManager.getIntegrationKernel().getName() + " integration");
+        if (checkpointer != null) {
+            checkpointer.start(checkpointInterval);
+        }
+        Server server = new Server(threadManager, port, updateMode);
+        Metrics metrics = new Metrics();
+        threadManager.registerMetrics(metrics);
+        server.registerMetrics(metrics);
+        if (checkpointer != null) {
+            checkpointer.registerMetrics(metrics);
+        }
+        metrics.start(metricsPort);
+        server.start();
+    }
+
+    // Journals start after the restore, so the state they start from includes it
+    static void startJournal(ThreadController threadManager, Path file) {
+        try {
+            threadManager.startJournal(new InputJournal(file));
+        } catch (IOException | IllegalStateException e) {
+            System.err.println("Could not start the input journal " + file + ": " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(threadManager::stopJournal, "journal-shutdown"));
+        System.out.println("Journaling inputs to " + file);
+    }
+
+    private static void replay(ThreadController threadManager, Path file) {
+        boolean matched;
+        try {
+            matched = new JournalReplay(threadManager).replay(file);
+        } catch (IOException e) {
+            System.err.println("Could not replay " + file + ": " + e.getMessage());
+            matched = false;
+        }
+        System.exit(matched ? 0 : 1);
+    }
+
+    // Other options are skipped here, so only batch values are read as numbers
+    private static int addBatch(ThreadController threadManager, String option, String value, int height) {
+        double[] v;
+        switch (option) {
+            case "--particles":
+                v = parseValues(option, value, 5);
+                threadManager.addParticles((int) v[0], (int) v[1], height - (int) v[2], Math.toRadians(v[3]), v[4]);
+                return (int) v[0];
+            case "--distance":
+                v = parseValues(option, value, 7);
+                threadManager.addParticlesWithUniformDistance((int) v[0], (int) v[1], height - (int) v[2], (int) v[3], height - (int) v[4], Math.toRadians(v[5]), v[6]);
+                return (int) v[0];
+            case "--angle":
+                v = parseValues(option, value, 6);
+                threadManager.addParticlesWithUniformAngle((int) v[0], (int) v[1], height - (int) v[2], Math.toRadians(v[3]), Math.toRadians(v[4]), v[5]);
+                return (int) v[0];
+            case "--velocity":
+                v = parseValues(option, value, 6);
+                threadManager.addParticlesWithUniformVelocity((int) v[0], (int) v[1], height - (int) v[2], Math.toRadians(v[3]), v[4], v[5]);
+                return (int) v[0];
+            default:
+                return 0;
+        }
+    }
+
+    private static double[] parseValues(String option, String value, int count) {
+        String[] parts = value.split(",");
+        if (parts.length != count) {
+            exitWithUsage(option + " expects " + count + " comma-separated values");
+        }
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+
+    private static byte parseUpdateMode(String value) {
+        switch (value) {
+            case "dead-reckoning":
+                return Protocol.UPDATE_DEAD_RECKONING;
+            case "state":
+                return Protocol.UPDATE_STATE;
+            default:
+                exitWithUsage("Unknown update mode: " + value);
+                return 0;
+        }
+    }
+
+    private static boolean parseSwitch(String value) {
+        switch (value) {
+            case "on":
+                return true;
+            case "off":
+                return false;
+            default:
+                exitWithUsage("Expected on or off: " + value);
+                return false;
+        }
+    }
+
+    private static int parseInt(String value) {
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            exitWithUsage("Invalid number: " + value);
+            return 0;
+        }
+    }
+
+    private static double parseDouble(String value) {
+        try {
+            return Double.parseDouble(value);
+        } catch (NumberFormatException e) {
+            exitWithUsage("Invalid number: " + value);
+            return 0;
+        }
+    }
+
+    private static void exitWithUsage(String message) {
+        System.err.println(message);
+        System.err.println(USAGE);
+        System.exit(1);
+    }
+}
@@ -0,0 +1,68 @@
+import java.util.Arrays;
+import java.util.BitSet;
+
+// Hands out dense int ids shared by particles and explorers; released ids are reused before new ones
+public class IdAllocator {
+    private int nextId = 0;
+    private int[] freeIds = new int[64];
+    private int freeCount = 0;
+
+    public synchronized int allocate() {
+        return freeCount > 0 ? freeIds[--freeCount] : nextId++;
+    }
+
+    public synchronized void allocate(int[] into, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            into[offset + i] = freeCount > 0 ? freeIds[--freeCount] : nextId++;
+        }
+    }
+
+    public synchronized void release(int id) {
+        if (freeCount == freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, freeIds.length * 2);
+        }
+        freeIds[freeCount++] = id;
+    }
+
+    // Released in reverse so the lowest ids are handed out again first
+    public synchronized void release(int[] ids, int offset, int count) {
+        if (freeCount + count > freeIds.length) {
+            freeIds = Arrays.copyOf(freeIds, Math.max(freeCount + count, freeIds.length * 2));
+        }
+        for (int i = offset + count - 1; i >= offset; i--) {
+            freeIds[freeCount++] = ids[i];
+        }
+    }
+
+    // Takes one particular id if it is free, as a replay does for the id a join was handed; returns whether it was
+    public synchronized boolean reserve(int id) {
+        if (id == nextId) {
+            nextId++;
+            return true;
+        }
+        for (int i = freeCount - 1; i >= 0; i--) {
+            if (freeIds[i] == id) {
+                System.arraycopy(freeIds, i + 1, freeIds, i, freeCount - i - 1);
+                freeCount--;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Restores a saved allocation: ids below idLimit are in use when set in used and free otherwise
+    public synchronized void reset(int idLimit, BitSet used) {
+        nextId = Math.max(idLimit, used.length());
+        freeIds = new int[Math.max(64, nextId - used.cardinality())];
+        freeCount = 0;
+        // Pushed from the top down so the lowest free ids are handed out first
+        for (int id = used.previousClearBit(nextId - 1); id >= 0; id = used.previousClearBit(id - 1)) {
+            freeIds[freeCount++] = id;
+        }
+    }
+
+    // Upper bound of every id handed out so far, for sizing id-indexed arrays
+    public synchronized int getIdLimit() {
+        return nextId;
+    }
+}
@@ -0,0 +1,174 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+// Append-only record of every input the simulation applied, stamped with the number of ticks completed when it
+// was applied. Together with the checkpoint of the state it started from, saved next to it, it replays to the
+// same state tick for tick. Records are appended under the write lock, so their order is the order they took
+// effect in. The file is big endian:
+//   int magic, int version, long startTick, boolean collisions, then records of byte type, long tick and
+//   the type's fields below
+// A failed write stops the journal rather than the simulation.
+public class InputJournal {
+    static final int MAGIC = 0x50534a4e;
+    static final int VERSION = 1;
+    // Every this many ticks the journal also records a checksum of the state, which replays compare against
+    static final int CHECKSUM_INTERVAL_TICKS = 120;
+
+    static final byte SPAWN = 0;        // SpawnRequest
+    static final byte SPAWN_BATCH = 1;  // int count, double x[], y[], vx[], vy[]
+    static final byte JOIN = 2;         // int id, double x, double y
+    static final byte LEAVE = 3;        // int id
+    static final byte COMMAND = 4;      // int id, int vx, int vy
+    static final byte CLEAR = 5;
+    static final byte COLLISIONS = 6;   // boolean enabled
+    static final byte CHECKSUM = 7;     // long checksum
+    static final byte END = 8;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final Path file;
+    private DataOutputStream out;
+
+    public InputJournal(Path file) {
+        this.file = file;
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    // The checkpoint of the state a journal starts from
+    public static Path startCheckpoint(Path journal) {
+        return journal.resolveSibling(journal.getFileName() + ".ckpt");
+    }
+
+    // Called by the simulation under the write lock, once, with the state the journal starts from
+    void open(Checkpoint start, boolean collisions) throws IOException {
+        start.write(startCheckpoint(file));
+        out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), BUFFER_SIZE));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeLong(start.getTick());
+        out.writeBoolean(collisions);
+        out.flush();
+    }
+
+    void spawn(long tick, SpawnRequest request) {
+        try {
+            begin(SPAWN, tick);
+            request.write(out);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void spawnBatch(long tick, SpawnBatch batch) {
+        try {
+            begin(SPAWN_BATCH, tick);
+            int count = batch.getCount();
+            out.writeInt(count);
+            for (double[] column : new double[][]{batch.getX(), batch.getY(), batch.getVx(), batch.getVy()}) {
+                for (int i = 0; i < count; i++) {
+                    out.writeDouble(column[i]);
+                }
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void join(long tick, Explorer explorer) {
+        try {
+            begin(JOIN, tick);
+            out.writeInt(explorer.getId());
+            out.writeDouble(explorer.getX());
+            out.writeDouble(explorer.getY());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void leave(long tick, int id) {
+        try {
+            begin(LEAVE, tick);
+            out.writeInt(id);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void command(long tick, int id, int vx, int vy) {
+        try {
+            begin(COMMAND, tick);
+            out.writeInt(id);
+            out.writeInt(vx);
+            out.writeInt(vy);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void clear(long tick) {
+        try {
+            begin(CLEAR, tick);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void collisions(long tick, boolean enabled) {
+        try {
+            begin(COLLISIONS, tick);
+            out.writeBoolean(enabled);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    // Also pushes what was buffered to the file, so a crash loses at most one interval
+    void checksum(long tick, long checksum) {
+        try {
+            begin(CHECKSUM, tick);
+            out.writeLong(checksum);
+            out.flush();
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void close(long tick) {
+        try {
+            begin(END, tick);
+            out.close();
+        } catch (IOException e) {
+            fail(e);
+        }
+        out = null;
+    }
+
+    boolean isOpen() {
+        return out != null;
+    }
+
+    private void begin(byte type, long tick) throws IOException {
+        if (out == null) {
+            throw new IOException("closed");
+        }
+        out.writeByte(type);
+        out.writeLong(tick);
+    }
+
+    private void fail(IOException e) {
+        if (out == null) {
+            return;
+        }
+        System.err.println("Input journal " + file + " stopped: " + e.getMessage());
+        try {
+            out.close();
+        } catch (IOException ignored) {}
+        out = null;
+    }
+}
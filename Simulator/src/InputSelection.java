@@ -13,6 +13,11 @@ public class InputSelection extends JFrame {
     private boolean isPaused = false;
 
     public InputSelection(ThreadController threadManager) {
+        this(threadManager, null);
+    }
+
+    // The checkpoint button is only shown when there is a checkpointer
+    public InputSelection(ThreadController threadManager, Checkpointer checkpointer) {
         this.threadManager = threadManager;
         setTitle("Particle Manager");
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -55,8 +60,18 @@ public class InputSelection extends JFrame {
         controlPanel.setLayout(new FlowLayout(FlowLayout.CENTER));
         JButton clearButton = new JButton("Clear");
         pauseButton = new JButton("Pause");
+        JCheckBox collisionsCheckBox = new JCheckBox("Collisions", threadManager.isCollisionsEnabled());
         controlPanel.add(clearButton);
         controlPanel.add(pauseButton);
+        controlPanel.add(collisionsCheckBox);
+        if (checkpointer != null) {
+            JButton checkpointButton = new JButton("Checkpoint");
+            controlPanel.add(checkpointButton);
+            checkpointButton.addActionListener(e -> checkpointer.requestCheckpoint().whenComplete((message, error) -> SwingUtilities.invokeLater(() -> {
+                feedbackMessages.add(error == null ? message + "." : error.getCause().getMessage() + ".");
+                updateFeedbackDisplay();
+            })));
+        }
         getContentPane().add(controlPanel, BorderLayout.SOUTH);
 
         clearButton.addActionListener(e -> {
@@ -79,6 +94,12 @@ public class InputSelection extends JFrame {
             updateFeedbackDisplay();
         });
 
+        collisionsCheckBox.addActionListener(e -> {
+            threadManager.setCollisionsEnabled(collisionsCheckBox.isSelected());
+            feedbackMessages.add(collisionsCheckBox.isSelected() ? "Particle collisions on." : "Particle collisions off.");
+            updateFeedbackDisplay();
+        });
+
         pack();
     }
 
@@ -165,9 +186,7 @@ public class InputSelection extends JFrame {
                 double velocity = Double.parseDouble(velocityInput.getText());
         
                 if (genericModeButton.isSelected()) {
-                    for (int i = 0; i < number; i++) {
-                        threadManager.addParticle(x, y, angle, velocity);
-                    }
+                    threadManager.addParticles(number, x, y, angle, velocity);
                     feedbackMessages.add("Added " + number + " individual particle(s) at (" + x + ", " + (720 - y) + ") with angle " +
                                          Math.toDegrees(angle) + " degrees and velocity " + velocity + ".");
                 } else if (uniformDistanceButton.isSelected()) {
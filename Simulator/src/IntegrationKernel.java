@@ -0,0 +1,52 @@
+// One fixed integration step over a range of particle columns: add the velocity, bounce off the canvas edges
+// and clamp. Every kernel gives bit-identical results, since clients step particles with the scalar one.
+public interface IntegrationKernel {
+    // Built from src-vector; only resolvable when it was compiled and the JVM runs with --add-modules jdk.incubator.vector
+    String VECTOR_IMPLEMENTATION = "VectorIntegrationKernel";
+
+    IntegrationKernel SCALAR = new IntegrationKernel() {
+        @Override
+        public void integrate(double[] x, double[] y, double[] vx, double[] vy, int from, int to, int canvasWidth, int canvasHeight) {
+            ParticleStore.integrate(x, y, vx, vy, from, to, canvasWidth, canvasHeight);
+        }
+
+        @Override
+        public String getName() {
+            return "scalar";
+        }
+    };
+
+    void integrate(double[] x, double[] y, double[] vx, double[] vy, int from, int to, int canvasWidth, int canvasHeight);
+
+    String getName();
+
+    // The Vector API kernel, loaded on first use; null when the incubator module is not in the JVM
+    static IntegrationKernel vector() {
+        try {
+            return (IntegrationKernel) Class.forName(VECTOR_IMPLEMENTATION).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+
+    static boolean isKnown(String name) {
+        return name.equals("scalar") || name.equals("vector") || name.equals("auto");
+    }
+
+    // "scalar", "vector", or "auto" for the vector kernel when it is available; unknown names give null
+    static IntegrationKernel forName(String name) {
+        switch (name) {
+            case "scalar":
+                return SCALAR;
+            case "vector":
+            case "auto":
+                IntegrationKernel vector = vector();
+                if (vector == null && name.equals("vector")) {
+                    System.err.println("The vector kernel needs --add-modules jdk.incubator.vector, using the scalar one");
+                }
+                return vector != null ? vector : SCALAR;
+            default:
+                return null;
+        }
+    }
+}
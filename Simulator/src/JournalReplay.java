@@ -0,0 +1,141 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+// Re-runs a journal on a fresh simulation: restores the state it started from, then applies each input before
+// the tick it was stamped with and ticks back to back in between, without a server or a tick interval. Every
+// checksum in the journal is compared against the replayed state.
+public class JournalReplay {
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private final ThreadController threadManager;
+    private final Map<Integer, Explorer> explorers = new HashMap<>();
+    private long checksums = 0;
+    private long mismatches = 0;
+
+    public JournalReplay(ThreadController threadManager) {
+        this.threadManager = threadManager;
+    }
+
+    // Returns whether every checksum matched
+    public boolean replay(Path journal) throws IOException {
+        Checkpoint start = Checkpoint.read(InputJournal.startCheckpoint(journal));
+        threadManager.setCanvasSize(start.getWorldWidth(), start.getWorldHeight());
+        threadManager.restoreCheckpoint(start);
+        threadManager.scaleForThroughput();
+
+        long startNanos = System.nanoTime();
+        long tick = start.getTick();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(journal), BUFFER_SIZE))) {
+            if (in.readInt() != InputJournal.MAGIC) {
+                throw new IOException("Not an input journal: " + journal);
+            }
+            int version = in.readInt();
+            if (version != InputJournal.VERSION) {
+                throw new IOException("Unsupported journal version " + version + ": " + journal);
+            }
+            if (in.readLong() != start.getTick()) {
+                throw new IOException("Journal does not start at the tick of " + InputJournal.startCheckpoint(journal));
+            }
+            threadManager.setCollisionsEnabled(in.readBoolean());
+
+            while (true) {
+                byte type;
+                try {
+                    type = in.readByte();
+                } catch (EOFException e) {
+                    // Cut short by a crash; everything up to the last whole record still replays
+                    break;
+                }
+                long stamp = in.readLong();
+                for (; tick < stamp; tick++) {
+                    threadManager.tick();
+                }
+                if (type == InputJournal.END) {
+                    break;
+                }
+                apply(type, stamp, in);
+            }
+        }
+        long nanos = System.nanoTime() - startNanos;
+        long ticks = tick - start.getTick();
+        System.out.printf("Replayed %d ticks in %d ms (%.0f ticks/s, %s integration), %d particles, checksum %016x%n", ticks,
+            nanos / 1_000_000, ticks * 1e9 / Math.max(1, nanos), threadManager.getIntegrationKernel().getName(),
+            threadManager.getParticles().size(), threadManager.checksum());
+        System.out.printf("%d of %d checksums matched%n", checksums - mismatches, checksums);
+        return mismatches == 0;
+    }
+
+    private void apply(byte type, long tick, DataInputStream in) throws IOException {
+        switch (type) {
+            case InputJournal.SPAWN:
+                threadManager.addSpawnBatch(SpawnRequest.read(in).generate(ForkJoinPool.commonPool()));
+                threadManager.flushInputs();
+                break;
+            case InputJournal.SPAWN_BATCH: {
+                int count = in.readInt();
+                double[][] columns = new double[4][count];
+                for (double[] column : columns) {
+                    for (int i = 0; i < count; i++) {
+                        column[i] = in.readDouble();
+                    }
+                }
+                threadManager.addSpawnBatch(SpawnBatch.of(columns[0], columns[1], columns[2], columns[3]));
+                threadManager.flushInputs();
+                break;
+            }
+            case InputJournal.JOIN: {
+                int id = in.readInt();
+                Explorer explorer = threadManager.createExplorer(id, in.readDouble(), in.readDouble());
+                if (explorer == null) {
+                    throw new IOException("Tick " + tick + ": explorer " + id + " joined with an id already in use");
+                }
+                threadManager.flushInputs();
+                explorers.put(id, explorer);
+                break;
+            }
+            case InputJournal.LEAVE: {
+                Explorer explorer = explorers.remove(in.readInt());
+                if (explorer != null) {
+                    threadManager.removeExplorer(explorer);
+                    threadManager.flushInputs();
+                }
+                break;
+            }
+            case InputJournal.COMMAND: {
+                Explorer explorer = explorers.get(in.readInt());
+                int vx = in.readInt(), vy = in.readInt();
+                if (explorer != null) {
+                    threadManager.submitCommand(new ExplorerCommand(explorer, vx, vy));
+                    threadManager.flushInputs();
+                }
+                break;
+            }
+            case InputJournal.CLEAR:
+                threadManager.clearParticles();
+                break;
+            case InputJournal.COLLISIONS:
+                threadManager.setCollisionsEnabled(in.readBoolean());
+                break;
+            case InputJournal.CHECKSUM: {
+                long expected = in.readLong();
+                long actual = threadManager.checksum();
+                checksums++;
+                if (actual != expected) {
+                    if (mismatches++ == 0) {
+                        System.err.printf("Diverged by tick %d: checksum %016x, journal has %016x%n", tick, actual, expected);
+                    }
+                }
+                break;
+            }
+            default:
+                throw new IOException("Unknown journal record " + type + " at tick " + tick);
+        }
+    }
+}
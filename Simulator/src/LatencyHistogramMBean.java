@@ -0,0 +1,17 @@
+public interface LatencyHistogramMBean {
+    long getCount();
+
+    long getSumNanos();
+
+    long getMeanNanos();
+
+    long getMaxNanos();
+
+    long getP50Nanos();
+
+    long getP90Nanos();
+
+    long getP99Nanos();
+
+    long getP999Nanos();
+}
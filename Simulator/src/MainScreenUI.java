@@ -1,101 +1,110 @@
 import java.awt.*;
 import java.awt.event.ComponentAdapter;
 import java.awt.event.ComponentEvent;
-import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.LockSupport;
 import javax.swing.*;
 
 public class MainScreenUI extends JPanel {
-    private final DrawPanel drawPanel;
+    private static final int TARGET_FPS = 60;
+
+    private final DrawCanvas drawCanvas;
     private final ThreadController threadManager;
-    private final List<Explorer> explorers = new CopyOnWriteArrayList<>();
-    private Thread gameThread;
+    private Thread renderThread;
     private volatile boolean running = false;
     private FPS trackFPS = new FPS();
+    private final LatencyHistogram renderTime = new LatencyHistogram();
 
     public MainScreenUI() {
-        drawPanel = new DrawPanel();
+        this(RasterRenderer.DEFAULT_LOD_THRESHOLD);
+    }
+
+    public MainScreenUI(int lodThreshold) {
+        drawCanvas = new DrawCanvas();
+        drawCanvas.particleRenderer.setLodThreshold(lodThreshold);
 
         setLayout(new BorderLayout());
-        add(drawPanel, BorderLayout.CENTER);
+        add(drawCanvas, BorderLayout.CENTER);
         threadManager = new ThreadController();
+        // The canvas has a fixed size, so the world is sized before anything is restored into it
+        Dimension size = drawCanvas.getPreferredSize();
+        threadManager.setCanvasSize(size.width, size.height);
 
-        drawPanel.addComponentListener(new ComponentAdapter() {
+        drawCanvas.addComponentListener(new ComponentAdapter() {
             @Override
             public void componentResized(ComponentEvent e) {
                 super.componentResized(e);
-                drawPanel.removeComponentListener(this);
+                drawCanvas.removeComponentListener(this);
                 startGameLoop();
             }
         });
     }
 
     public void startGameLoop() {
-        threadManager.setCanvasSize(drawPanel.getWidth(), drawPanel.getHeight());
+        if (drawCanvas.getWidth() != threadManager.getCanvasWidth() || drawCanvas.getHeight() != threadManager.getCanvasHeight()) {
+            threadManager.setCanvasSize(drawCanvas.getWidth(), drawCanvas.getHeight());
+        }
+        threadManager.start();
+        drawCanvas.createBufferStrategy(3);
         running = true;
-        gameThread = new Thread(this::gameLoop);
-        gameThread.start();
+        renderThread = new Thread(this::renderLoop, "render");
+        renderThread.start();
     }
 
-    private void gameLoop() {
-        final long targetDelay = 1000 / 60;
-        long lastFpsDisplayTime = System.currentTimeMillis();
+    // Active rendering: this thread draws the latest published frame into the canvas buffers on its own
+    // schedule, the simulation steps itself on the ThreadController tick thread
+    private void renderLoop() {
+        final long frameNanos = 1_000_000_000L / TARGET_FPS;
+        long nextFrameTime = System.nanoTime();
 
         while (running) {
-            long now = System.currentTimeMillis();
-
             trackFPS.update();
-            if (now - lastFpsDisplayTime >= 500 && trackFPS.getFPS() != 0) {
-                drawPanel.setFps(trackFPS.getFPS());
-                threadManager.checkAndAdjustThread();
-                lastFpsDisplayTime = now;
-            }
+            long renderStart = System.nanoTime();
+            drawCanvas.render(trackFPS.getFPS());
+            renderTime.recordSince(renderStart);
 
-            updateAndRepaint();
-            threadManager.updateProcessingTimes();
-
-            long sleepTime = targetDelay - (System.currentTimeMillis() - now);
+            nextFrameTime += frameNanos;
+            long sleepTime = nextFrameTime - System.nanoTime();
             if (sleepTime > 0) {
-                try {
-                    Thread.sleep(sleepTime);
-                } catch (InterruptedException e) {
-                    running = false;
-                }
+                LockSupport.parkNanos(sleepTime);
+            } else if (-sleepTime > frameNanos) {
+                // A slow frame is not made up for with a burst of frames
+                nextFrameTime = System.nanoTime();
             }
         }
     }
 
-    private void updateAndRepaint() {
-        threadManager.updateParticles();
-        for (Explorer explorer : explorers) {
-            explorer.update(drawPanel.getWidth(), drawPanel.getHeight());
-        }
-        SwingUtilities.invokeLater(drawPanel::repaint);
-    }
-
     public void stopGameLoop() {
         running = false;
         try {
-            gameThread.join();
+            renderThread.join();
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
+        threadManager.stop();
     }
 
-    public ThreadController getDynamicThreadManager() {
-        return threadManager;
+    public void registerMetrics(Metrics metrics) {
+        metrics.histogram("render_frame", "Drawing one frame of the simulation window", renderTime);
+        metrics.gauge("render_fps", "Frames the simulation window drew in the last second", () -> (long) trackFPS.getFPS());
     }
 
-    public void addExplorer(Explorer explorer) {
-        explorers.add(explorer);
+    public ThreadController getDynamicThreadManager() {
+        return threadManager;
     }
 
-    private class DrawPanel extends JPanel {
-        private double fpsToDisplay = 0;
-        private long lastUpdateTime = System.currentTimeMillis();
+    private class DrawCanvas extends Canvas {
+        private final RasterRenderer particleRenderer = new RasterRenderer(new Color(173, 216, 230, 255), Color.BLACK);
+        private final Font hudFont = new Font("Tahoma", Font.BOLD, 14);
+        private final double[] noParticles = new double[0];
+        // Only touched by the render thread
+        private FrameSnapshot frame;
 
-        public void setFps(double fps) {
-            this.fpsToDisplay = fps;
+        public DrawCanvas() {
+            setBackground(Color.BLACK);
+            // Everything is drawn by the render thread, AWT repaints would only flicker
+            setIgnoreRepaint(true);
         }
 
         @Override
@@ -113,72 +122,76 @@ public class MainScreenUI extends JPanel {
             return getPreferredSize();
         }
 
-        public DrawPanel() {
-            super();
-            setBackground(Color.BLACK);
-        }
-
-        @Override
-        protected void paintComponent(Graphics g) {
-            super.paintComponent(g);
-            setBackground(Color.BLACK);
-            drawDeveloperMode(g);
-            drawHUD(g);
+        // Redraws the whole frame until the buffers survived it, as BufferStrategy requires
+        public void render(double fps) {
+            BufferStrategy strategy = getBufferStrategy();
+            if (strategy == null) {
+                return;
+            }
+            frame = threadManager.takeFrame(frame);
+            do {
+                do {
+                    Graphics g = strategy.getDrawGraphics();
+                    try {
+                        drawDeveloperMode(g);
+                        drawHUD(g, fps);
+                    } finally {
+                        g.dispose();
+                    }
+                } while (strategy.contentsRestored());
+                strategy.show();
+            } while (strategy.contentsLost());
+            Toolkit.getDefaultToolkit().sync();
         }
 
         private void drawDeveloperMode(Graphics g) {
-            Color saiyanBlue = new Color(173, 216, 230, 255);
-            g.setColor(saiyanBlue);
-
-            long currentTime = System.currentTimeMillis();
-            double alpha = (currentTime - lastUpdateTime) / 100.0;
-            lastUpdateTime = currentTime;
-
-            threadManager.drawParticles(g, getHeight(), alpha);
-
-            Font counterFont = new Font("Tahoma", Font.BOLD, 14);
-            g.setFont(counterFont);
-
-            int yOffset = getHeight() - 30;
-            if (fpsToDisplay >= 60) {
-                g.setColor(Color.GREEN);
-            } else if (fpsToDisplay >= 50) {
-                g.setColor(Color.ORANGE);
-            } else {
-                g.setColor(Color.RED);
+            FrameSnapshot frame = this.frame;
+            if (frame == null) {
+                g.drawImage(particleRenderer.render(ForkJoinPool.commonPool(), getWidth(), getHeight(), 0, noParticles, noParticles, 0, 0, 1), 0, 0, null);
+                return;
             }
-            g.drawString(String.format("FPS: %.2f", fpsToDisplay), 10, yOffset);
-
-            String particlesText = String.format("Particles: %d", threadManager.getParticleSize());
-            g.setColor(Color.BLACK);
-            g.drawString(particlesText, 151, yOffset + 1);
-            g.setColor(new Color(255, 215, 0));
-            g.drawString(particlesText, 150, yOffset);
+            g.drawImage(particleRenderer.render(ForkJoinPool.commonPool(), getWidth(), getHeight(),
+                frame.getParticleCount(), frame.getX(), frame.getY(), 0, 0, 1), 0, 0, null);
 
-            for (Explorer explorer : explorers) {
-                explorer.draw(g);
+            double[] explorerX = frame.getExplorerX(), explorerY = frame.getExplorerY();
+            for (int i = 0; i < frame.getExplorerCount(); i++) {
+                Explorer.draw(g, explorerX[i], explorerY[i]);
             }
         }
 
-        private void drawHUD(Graphics g) {
+        private void drawHUD(Graphics g, double fps) {
+            FrameSnapshot frame = this.frame;
             Color saiyanBlue = new Color(173, 216, 230, 255);
             g.setColor(saiyanBlue);
-            g.setFont(new Font("Tahoma", Font.BOLD, 14));
+            g.setFont(hudFont);
 
             String modeText = "Mode: Developer";
             g.drawString(modeText, 10, 20);
 
+            long tick = frame != null ? frame.getTick() : 0;
+            double tickMillis = frame != null ? frame.getTickNanos() / 1_000_000.0 : 0;
+            g.drawString(String.format("Tick: %d (%.2f ms)", tick, tickMillis), 10, 40);
+
+            if (frame != null && frame.getExplorerCount() > 0) {
+                int nearby = 0, contacts = 0;
+                for (int i = 0; i < frame.getExplorerCount(); i++) {
+                    nearby += frame.getExplorerNearby()[i];
+                    contacts += frame.getExplorerContacts()[i];
+                }
+                g.drawString(String.format("Explorers: %d (%d particles near, %d touching)", frame.getExplorerCount(), nearby, contacts), 10, 60);
+            }
+
             int yOffset = getHeight() - 30;
-            if (fpsToDisplay >= 60) {
+            if (fps >= 60) {
                 g.setColor(Color.GREEN);
-            } else if (fpsToDisplay >= 50) {
+            } else if (fps >= 50) {
                 g.setColor(Color.ORANGE);
             } else {
                 g.setColor(Color.RED);
             }
-            g.drawString(String.format("FPS: %.2f", fpsToDisplay), 10, yOffset);
+            g.drawString(String.format("FPS: %.2f", fps), 10, yOffset);
 
-            String particlesText = String.format("Particles: %d", threadManager.getParticleSize());
+            String particlesText = String.format("Particles: %d", frame != null ? frame.getParticleCount() : 0);
             g.setColor(Color.BLACK);
             g.drawString(particlesText, 151, yOffset + 1);
             g.setColor(new Color(255, 215, 0));
@@ -0,0 +1,209 @@
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+// Collects the histograms and gauges the components own and serves them as JMX MBeans under the
+// ParticleSimulator domain and as plain text on a loopback port. Components register before start().
+public class Metrics {
+    public static final int DEFAULT_PORT = 12346;
+    private static final String DOMAIN = "ParticleSimulator";
+    private static final String PREFIX = "simulator_";
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+    private final Map<String, LongSupplier> gauges = new LinkedHashMap<>();
+    private final Map<String, String> descriptions = new LinkedHashMap<>();
+    private Supplier<? extends Collection<ClientStats>> clients = Collections::emptyList;
+    private final MBeanServer mbeanServer = ManagementFactory.getPlatformMBeanServer();
+    private HttpServer httpServer;
+
+    // Durations in nanoseconds, published as <name>_nanos
+    public void histogram(String name, String description, LatencyHistogram histogram) {
+        histograms.put(name, histogram);
+        descriptions.put(name, description);
+    }
+
+    // Names ending in _total are counters, everything else is read as a gauge
+    public void gauge(String name, String description, LongSupplier value) {
+        gauges.put(name, value);
+        descriptions.put(name, description);
+    }
+
+    public void clients(Supplier<? extends Collection<ClientStats>> clients) {
+        this.clients = clients;
+    }
+
+    // A port of -1 only registers the MBeans
+    public void start(int port) {
+        try {
+            for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+                mbeanServer.registerMBean(entry.getValue(), new ObjectName(DOMAIN + ":type=Latency,name=" + entry.getKey()));
+            }
+            mbeanServer.registerMBean(new GaugesMBean(), new ObjectName(DOMAIN + ":type=Simulation"));
+        } catch (JMException e) {
+            System.err.println("Could not register the metrics MBeans: " + e.getMessage());
+        }
+        if (port < 0) {
+            return;
+        }
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            httpServer.createContext("/", exchange -> {
+                byte[] body = render().getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            });
+            httpServer.start();
+            System.out.println("Metrics on http://localhost:" + port + "/metrics");
+        } catch (IOException e) {
+            System.err.println("Could not serve metrics on port " + port + ": " + e.getMessage());
+        }
+    }
+
+    public void stop() {
+        if (httpServer != null) {
+            httpServer.stop(0);
+        }
+    }
+
+    // Connections come and go, so their MBeans are registered one by one
+    void addClient(ClientStats client) {
+        try {
+            mbeanServer.registerMBean(client, clientName(client));
+        } catch (JMException e) {
+            System.err.println("Could not register the metrics of client " + client.getExplorerId() + ": " + e.getMessage());
+        }
+    }
+
+    void removeClient(ClientStats client) {
+        try {
+            mbeanServer.unregisterMBean(clientName(client));
+        } catch (JMException ignored) {
+            // Never registered
+        }
+    }
+
+    private static ObjectName clientName(ClientStats client) throws JMException {
+        return new ObjectName(DOMAIN + ":type=Client,name=" + client.getExplorerId());
+    }
+
+    // Prometheus text format: a summary per histogram, then the gauges, then one labelled series per client
+    public String render() {
+        StringBuilder out = new StringBuilder(4096);
+        for (Map.Entry<String, LatencyHistogram> entry : histograms.entrySet()) {
+            String name = PREFIX + entry.getKey() + "_nanos";
+            LatencyHistogram histogram = entry.getValue();
+            header(out, name, descriptions.get(entry.getKey()), "summary");
+            for (double quantile : QUANTILES) {
+                out.append(name).append("{quantile=\"").append(quantile).append("\"} ")
+                    .append(histogram.getPercentile(quantile)).append('\n');
+            }
+            out.append(name).append("_sum ").append(histogram.getSumNanos()).append('\n');
+            out.append(name).append("_count ").append(histogram.getCount()).append('\n');
+            out.append(name).append("_max ").append(histogram.getMaxNanos()).append('\n');
+        }
+        for (Map.Entry<String, LongSupplier> entry : gauges.entrySet()) {
+            String name = PREFIX + entry.getKey();
+            header(out, name, descriptions.get(entry.getKey()), name.endsWith("_total") ? "counter" : "gauge");
+            out.append(name).append(' ').append(entry.getValue().getAsLong()).append('\n');
+        }
+
+        List<ClientStats> connected = new ArrayList<>(clients.get());
+        header(out, PREFIX + "client_sent_bytes_total", "Bytes written to the client's socket", "counter");
+        for (ClientStats client : connected) {
+            clientLine(out, "client_sent_bytes_total", client, client.getSentBytes());
+        }
+        header(out, PREFIX + "client_sent_frames_total", "Frames queued for the client", "counter");
+        for (ClientStats client : connected) {
+            clientLine(out, "client_sent_frames_total", client, client.getSentFrames());
+        }
+        header(out, PREFIX + "client_queued_bytes", "Bytes waiting in the client's outbound buffer", "gauge");
+        for (ClientStats client : connected) {
+            clientLine(out, "client_queued_bytes", client, client.getQueuedBytes());
+        }
+        return out.toString();
+    }
+
+    private static void header(StringBuilder out, String name, String description, String type) {
+        out.append("# HELP ").append(name).append(' ').append(description).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void clientLine(StringBuilder out, String name, ClientStats client, long value) {
+        out.append(PREFIX).append(name).append("{explorer=\"").append(client.getExplorerId()).append("\"} ").append(value).append('\n');
+    }
+
+    // The gauges as read-only long attributes of one MBean
+    private class GaugesMBean implements DynamicMBean {
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            LongSupplier gauge = gauges.get(attribute);
+            if (gauge == null) {
+                throw new AttributeNotFoundException(attribute);
+            }
+            return gauge.getAsLong();
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                LongSupplier gauge = gauges.get(attribute);
+                if (gauge != null) {
+                    list.add(new Attribute(attribute, gauge.getAsLong()));
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only");
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            for (String name : gauges.keySet()) {
+                attributes.add(new MBeanAttributeInfo(name, "long", descriptions.get(name), true, false, false));
+            }
+            return new MBeanInfo(Metrics.class.getName(), "Simulation gauges and counters",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+        }
+    }
+}
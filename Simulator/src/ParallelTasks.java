@@ -0,0 +1,37 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+
+// Fork-join helpers shared by the passes that split their work into a fixed number of parts
+final class ParallelTasks {
+    private ParallelTasks() {
+    }
+
+    // Runs body for every task number from 0 to tasks - 1 and returns once all of them finished; a single task
+    // runs on the calling thread
+    static void run(ForkJoinPool pool, int tasks, IntConsumer body) {
+        if (tasks == 1) {
+            body.accept(0);
+            return;
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                List<ForkJoinTask<?>> list = new ArrayList<>(tasks);
+                for (int t = 0; t < tasks; t++) {
+                    int task = t;
+                    list.add(ForkJoinTask.adapt(() -> body.accept(task)));
+                }
+                invokeAll(list);
+            }
+        });
+    }
+
+    // End of part when count items are split into parts of near equal size; part -1 gives 0
+    static int rangeEnd(int count, int parts, int part) {
+        return (int) ((long) count * (part + 1) / parts);
+    }
+}
@@ -0,0 +1,110 @@
+// Picks how many workers, and with them partitions, the tick uses. A cost model turns the measured work of the
+// last window into nanoseconds per particle and predicts the work of the next ticks from the particle count.
+// The count goes up as soon as the prediction no longer fits the step budget, and down only once fewer workers
+// fit it with room to spare for several windows in a row. A scale-up that did not speed the step up enough is
+// undone and not retried for a while, which keeps a contended host from being handed ever more threads.
+public class ParallelismController {
+    static final int WINDOW_TICKS = 30;
+    // Share of the tick interval the step and the index rebuild may take
+    private static final double STEP_BUDGET = 0.25;
+    // Scaling down needs the predicted work to fit the smaller count even when this much larger
+    private static final double DOWN_MARGIN = 1.5;
+    private static final int DOWN_WINDOWS = 4;
+    // Less work than this per worker costs more in handoffs than a worker saves
+    private static final long MIN_WORK_PER_WORKER_NANOS = 250_000;
+    // A scale-up must deliver at least this share of the ideal speedup
+    private static final double MIN_EFFICIENCY = 0.5;
+    private static final int BLOCKED_WINDOWS = 20;
+    private static final double COST_SMOOTHING = 0.3;
+
+    private final int maxWorkers;
+    private final long budgetNanos;
+    private int workers = 1;
+    private double nanosPerParticle = 0;
+
+    private long windowWork, windowWall, windowParticles;
+    private int windowTicks = 0;
+    private int downWindows = 0;
+
+    // The last scale-up, checked at the end of the window after it
+    private boolean validating = false;
+    private int workersBeforeUp;
+    private double wallPerParticleBeforeUp;
+    private int ceiling;
+    private int blockedWindowsLeft = 0;
+
+    public ParallelismController(int maxWorkers, long tickIntervalNanos) {
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.budgetNanos = Math.max(1, (long) (tickIntervalNanos * STEP_BUDGET));
+        this.ceiling = this.maxWorkers;
+    }
+
+    // Called once per tick with the CPU time the tick's work took summed over the workers, its wall time and
+    // the particles it stepped; returns the worker count for the next tick, which only changes between windows
+    public int record(long workNanos, long wallNanos, int particles) {
+        windowWork += workNanos;
+        windowWall += wallNanos;
+        windowParticles += particles;
+        if (++windowTicks == WINDOW_TICKS) {
+            adjust();
+            windowWork = windowWall = windowParticles = 0;
+            windowTicks = 0;
+        }
+        return workers;
+    }
+
+    private void adjust() {
+        if (blockedWindowsLeft > 0 && --blockedWindowsLeft == 0) {
+            ceiling = maxWorkers;
+        }
+        if (windowParticles > 0) {
+            double cost = (double) windowWork / windowParticles;
+            nanosPerParticle = nanosPerParticle == 0 ? cost : nanosPerParticle + (cost - nanosPerParticle) * COST_SMOOTHING;
+        }
+        double wallPerParticle = windowParticles > 0 ? (double) windowWall / windowParticles : 0;
+
+        if (validating) {
+            validating = false;
+            double idealSpeedup = (double) workers / workersBeforeUp;
+            double speedup = wallPerParticle > 0 ? wallPerParticleBeforeUp / wallPerParticle : idealSpeedup;
+            if (speedup < 1 + (idealSpeedup - 1) * MIN_EFFICIENCY) {
+                ceiling = workersBeforeUp;
+                blockedWindowsLeft = BLOCKED_WINDOWS;
+                workers = workersBeforeUp;
+                downWindows = 0;
+                return;
+            }
+        }
+
+        double work = nanosPerParticle * windowParticles / WINDOW_TICKS;
+        int needed = workersFor(work);
+        if (needed > workers) {
+            workersBeforeUp = workers;
+            wallPerParticleBeforeUp = wallPerParticle;
+            validating = wallPerParticle > 0;
+            workers = needed;
+            downWindows = 0;
+        } else if (workersFor(work * DOWN_MARGIN) < workers) {
+            if (++downWindows >= DOWN_WINDOWS) {
+                workers = workersFor(work * DOWN_MARGIN);
+                downWindows = 0;
+            }
+        } else {
+            downWindows = 0;
+        }
+    }
+
+    private int workersFor(double work) {
+        int needed = (int) Math.ceil(work / budgetNanos);
+        int worthwhile = (int) (work / MIN_WORK_PER_WORKER_NANOS);
+        return Math.max(1, Math.min(Math.min(needed, worthwhile), ceiling));
+    }
+
+    public int getWorkers() {
+        return workers;
+    }
+
+    public double getNanosPerParticle() {
+        return nanosPerParticle;
+    }
+}
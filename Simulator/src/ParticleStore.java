@@ -0,0 +1,190 @@
+import java.util.Arrays;
+
+public class ParticleStore {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int HALF_SIZE = Ball.SIZE / 2;
+
+    // One primitive column per attribute so the tick walks contiguous memory
+    private int[] ids = new int[INITIAL_CAPACITY];
+    private double[] x = new double[INITIAL_CAPACITY];
+    private double[] y = new double[INITIAL_CAPACITY];
+    private double[] vx = new double[INITIAL_CAPACITY];
+    private double[] vy = new double[INITIAL_CAPACITY];
+
+    // Columns are replaced before size is published, so a reader that reads size first
+    // and the columns second never indexes past the end of a column
+    private volatile int size = 0;
+    private volatile IntegrationKernel kernel = IntegrationKernel.SCALAR;
+
+    private final IdAllocator idAllocator;
+    // Maps a particle id to its column index, -1 when the id is not a live particle
+    private int[] indexById = new int[0];
+    // Counts the times the store was emptied; ids released then may name different particles afterwards
+    private int generation = 0;
+
+    public ParticleStore(IdAllocator idAllocator) {
+        this.idAllocator = idAllocator;
+    }
+
+    public int add(double x, double y, double vx, double vy) {
+        ensureCapacity(size + 1);
+        int index = size;
+        int id = idAllocator.allocate();
+        this.ids[index] = id;
+        mapId(id, index);
+        this.x[index] = x;
+        this.y[index] = y;
+        this.vx[index] = vx;
+        this.vy[index] = vy;
+        size = index + 1;
+        return id;
+    }
+
+    // Copies a whole batch into the columns and publishes it with a single size update
+    public void append(double[] x, double[] y, double[] vx, double[] vy, int count) {
+        ensureCapacity(size + count);
+        int start = size;
+        idAllocator.allocate(ids, start, count);
+        for (int i = start; i < start + count; i++) {
+            mapId(ids[i], i);
+        }
+        System.arraycopy(x, 0, this.x, start, count);
+        System.arraycopy(y, 0, this.y, start, count);
+        System.arraycopy(vx, 0, this.vx, start, count);
+        System.arraycopy(vy, 0, this.vy, start, count);
+        size = start + count;
+    }
+
+    // Replaces the contents with saved columns, keeping their ids; the ids must already be reserved
+    public void restore(int[] ids, double[] x, double[] y, double[] vx, double[] vy, int count) {
+        clearIndex();
+        ensureCapacity(count);
+        System.arraycopy(ids, 0, this.ids, 0, count);
+        for (int i = 0; i < count; i++) {
+            mapId(ids[i], i);
+        }
+        System.arraycopy(x, 0, this.x, 0, count);
+        System.arraycopy(y, 0, this.y, 0, count);
+        System.arraycopy(vx, 0, this.vx, 0, count);
+        System.arraycopy(vy, 0, this.vy, 0, count);
+        size = count;
+    }
+
+    // Hash of every column, in store order
+    public long checksum() {
+        long hash = size;
+        for (int i = 0; i < size; i++) {
+            hash = hash * 31 + ids[i];
+            hash = hash * 31 + Double.doubleToLongBits(x[i]);
+            hash = hash * 31 + Double.doubleToLongBits(y[i]);
+            hash = hash * 31 + Double.doubleToLongBits(vx[i]);
+            hash = hash * 31 + Double.doubleToLongBits(vy[i]);
+        }
+        return hash;
+    }
+
+    public void ensureCapacity(int capacity) {
+        if (capacity <= ids.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1));
+        ids = Arrays.copyOf(ids, newCapacity);
+        x = Arrays.copyOf(x, newCapacity);
+        y = Arrays.copyOf(y, newCapacity);
+        vx = Arrays.copyOf(vx, newCapacity);
+        vy = Arrays.copyOf(vy, newCapacity);
+    }
+
+    public void update(int from, int to, int canvasWidth, int canvasHeight) {
+        kernel.integrate(x, y, vx, vy, from, to, canvasWidth, canvasHeight);
+    }
+
+    public void setKernel(IntegrationKernel kernel) {
+        this.kernel = kernel;
+    }
+
+    public IntegrationKernel getKernel() {
+        return kernel;
+    }
+
+    // One fixed step over a range of columns; clients run the same step to extrapolate between updates
+    static void integrate(double[] x, double[] y, double[] vx, double[] vy, int from, int to, int canvasWidth, int canvasHeight) {
+        int maxX = canvasWidth - HALF_SIZE;
+        int maxY = canvasHeight - HALF_SIZE;
+
+        for (int i = from; i < to; i++) {
+            double px = x[i] + vx[i];
+            double py = y[i] + vy[i];
+
+            // Bounce off the edges of the canvas
+            if (px <= HALF_SIZE || px >= maxX) {
+                vx[i] = -vx[i];
+            }
+            if (py <= HALF_SIZE || py >= maxY) {
+                vy[i] = -vy[i];
+            }
+
+            // Ensure the particle stays within the bounds
+            x[i] = Math.max(HALF_SIZE, Math.min(maxX, px));
+            y[i] = Math.max(HALF_SIZE, Math.min(maxY, py));
+        }
+    }
+
+    private void mapId(int id, int index) {
+        if (id >= indexById.length) {
+            int oldLength = indexById.length;
+            indexById = Arrays.copyOf(indexById, Math.max(id + 1, oldLength * 2));
+            Arrays.fill(indexById, oldLength, indexById.length, -1);
+        }
+        indexById[id] = index;
+    }
+
+    public int indexOf(int id) {
+        int[] indexById = this.indexById;
+        return id >= 0 && id < indexById.length ? indexById[id] : -1;
+    }
+
+    // Returns every id to the allocator so they are reused by the next spawns
+    public void clear() {
+        int count = size;
+        clearIndex();
+        idAllocator.release(ids, 0, count);
+    }
+
+    private void clearIndex() {
+        int count = size;
+        size = 0;
+        generation++;
+        for (int i = 0; i < count; i++) {
+            indexById[ids[i]] = -1;
+        }
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int[] getIds() {
+        return ids;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVx() {
+        return vx;
+    }
+
+    public double[] getVy() {
+        return vy;
+    }
+}
@@ -0,0 +1,73 @@
+// Binary server-to-client protocol. Every frame is
+//   int length (bytes after this field), byte version, byte type, payload
+// HELLO:     int controlledExplorerId, int worldWidth, int worldHeight, int tickRate, int positionScale, byte updateMode
+// PARTICLES: long tick, int count, count x particle record
+// EXPLORERS: long tick, int count, count x { int id, u16 x, u16 y }
+// PARTICLES_ENTER: same layout as PARTICLES, for particles that just entered the client's area of interest
+// PARTICLES_LEAVE: long tick, int count, count x { int id }, for particles that left it or no longer exist
+// PROXIMITY: long tick, int contactCount, int nearbyCount, contactCount x { int id }, the particles touching the
+//            client's explorer and how many are near it; sent before EXPLORERS, only when it changed
+// PARTICLES carries only particles that stayed inside the area and changed since the previous tick.
+// The particle record and what counts as a change depend on the update mode announced in HELLO:
+//   UPDATE_STATE:          { int id, u16 x, u16 y, s16 vx, s16 vy }, sent whenever the quantized state changes
+//   UPDATE_DEAD_RECKONING: { int id, f32 x, f32 y, f32 vx, f32 vy }, sent only when the velocity changes (a bounce);
+//                          the client steps particles itself and the record is the state after the frame's tick
+// Positions are fixed point in 1 / positionScale pixels, velocities in 1 / VELOCITY_SCALE pixels per tick.
+// Client-to-server commands stay newline-terminated text (MOVE_UP, STOP_MOVE, ...).
+public final class Protocol {
+    public static final byte VERSION = 4;
+
+    public static final byte HELLO = 1;
+    public static final byte PARTICLES = 2;
+    public static final byte EXPLORERS = 3;
+    public static final byte PARTICLES_ENTER = 4;
+    public static final byte PARTICLES_LEAVE = 5;
+    public static final byte PROXIMITY = 6;
+
+    public static final byte UPDATE_STATE = 0;
+    public static final byte UPDATE_DEAD_RECKONING = 1;
+
+    public static final int LENGTH_SIZE = 4;
+    public static final int HEADER_SIZE = LENGTH_SIZE + 2;
+    public static final int HELLO_SIZE = HEADER_SIZE + 21;
+    public static final int PARTICLE_RECORD_SIZE = 12;
+    public static final int TRAJECTORY_RECORD_SIZE = 20;
+    public static final int EXPLORER_RECORD_SIZE = 8;
+    public static final int PARTICLE_LEAVE_RECORD_SIZE = 4;
+    public static final int CONTACT_RECORD_SIZE = 4;
+
+    public static final int VELOCITY_SCALE = 256;
+    private static final int MAX_POSITION_SCALE = 64;
+    private static final int MAX_UNSIGNED_SHORT = 0xFFFF;
+
+    private Protocol() {
+    }
+
+    public static int particleRecordSize(byte updateMode) {
+        return updateMode == UPDATE_DEAD_RECKONING ? TRAJECTORY_RECORD_SIZE : PARTICLE_RECORD_SIZE;
+    }
+
+    // The finest fixed-point step that still fits the largest world coordinate into 16 bits
+    public static int positionScale(int worldWidth, int worldHeight) {
+        int largest = Math.max(1, Math.max(worldWidth, worldHeight));
+        return Math.max(1, Math.min(MAX_POSITION_SCALE, MAX_UNSIGNED_SHORT / largest));
+    }
+
+    public static char quantizePosition(double value, int positionScale) {
+        long scaled = Math.round(value * positionScale);
+        return (char) Math.max(0, Math.min(MAX_UNSIGNED_SHORT, scaled));
+    }
+
+    public static double dequantizePosition(char value, int positionScale) {
+        return value / (double) positionScale;
+    }
+
+    public static short quantizeVelocity(double value) {
+        long scaled = Math.round(value * VELOCITY_SCALE);
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+    }
+
+    public static double dequantizeVelocity(short value) {
+        return value / (double) VELOCITY_SCALE;
+    }
+}
@@ -0,0 +1,226 @@
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+// Finds, once per tick, how many particles are near every explorer and which ones touch it, from the spatial
+// grid the tick just rebuilt. Each explorer's circle is binned into the grid cells it overlaps: a cell wholly
+// inside a circle adds its particle count without looking at a particle, only the cells cut by a circle's edge
+// or close enough to touch need a distance test per particle. Those tests walk the particles of the cut cells,
+// or, once the cut cells hold so many particles that reading them in cell order costs more, sweep the whole
+// store in index order and look up each particle's cell. Both are split over the tick pool.
+public class ProximityQuery {
+    public static final double DEFAULT_RADIUS = 32;
+    // Centre distance at which a particle touches an explorer
+    private static final double CONTACT_DISTANCE = (Explorer.SIZE + Ball.SIZE) / 2.0;
+    private static final double CONTACT_DISTANCE_SQUARED = CONTACT_DISTANCE * CONTACT_DISTANCE;
+    // A particle read in cell order costs about this many read in index order
+    private static final int CELL_ORDER_READ_COST = 8;
+
+    private volatile double radius = DEFAULT_RADIUS;
+
+    // Reused between ticks, touched by the tick thread and its tasks only
+    private double tickRadius;
+    private double[] centreX = new double[0], centreY = new double[0];
+    private int[] nearby = new int[0];
+    // The explorers that need a test in cell c are cutExplorers[cutStart[c] .. cutStart[c + 1])
+    private int[] cutStart = new int[1];
+    private int[] cutCursor = new int[0];
+    private int[] cutExplorers = new int[0];
+    private int[][] partitionNearby = new int[0][];
+    // Contacts found by each partition, as explorer index and particle id pairs
+    private int[][] partitionContacts = new int[0][];
+    private int[] partitionContactSize = new int[0];
+
+    public void setRadius(double radius) {
+        this.radius = Math.max(CONTACT_DISTANCE, radius);
+    }
+
+    public double getRadius() {
+        return radius;
+    }
+
+    // Must run under the write lock, after the grid was rebuilt from the current positions
+    public void update(List<Explorer> explorerList, ParticleStore particles, SpatialGrid grid, ForkJoinPool pool, int partitions) {
+        Explorer[] explorers = explorerList.toArray(new Explorer[0]);
+        int explorerCount = explorers.length;
+        tickRadius = radius;
+        if (centreX.length < explorerCount) {
+            centreX = new double[explorerCount];
+            centreY = new double[explorerCount];
+            nearby = new int[explorerCount];
+        }
+        for (int e = 0; e < explorerCount; e++) {
+            explorers[e].getProximity().reset();
+            // Explorers are placed by their top-left corner, particles by their centre
+            centreX[e] = explorers[e].getX() + Explorer.SIZE / 2.0;
+            centreY[e] = explorers[e].getY() + Explorer.SIZE / 2.0;
+            nearby[e] = 0;
+        }
+        int count = particles.size();
+        if (explorerCount == 0 || count == 0) {
+            return;
+        }
+
+        long cutParticles = binExplorers(grid, explorerCount);
+        int tasks = Math.max(1, partitions);
+        ensurePartitions(tasks, explorerCount);
+        if (cutParticles * CELL_ORDER_READ_COST < count) {
+            int cellCount = grid.getColumns() * grid.getRows();
+            ParallelTasks.run(pool, tasks, p -> testCells(p, explorerCount, grid, particles, ParallelTasks.rangeEnd(cellCount, tasks, p - 1), ParallelTasks.rangeEnd(cellCount, tasks, p)));
+        } else {
+            ParallelTasks.run(pool, tasks, p -> testSweep(p, explorerCount, grid, particles, ParallelTasks.rangeEnd(count, tasks, p - 1), ParallelTasks.rangeEnd(count, tasks, p)));
+        }
+
+        for (int p = 0; p < tasks; p++) {
+            int[] counts = partitionNearby[p];
+            for (int e = 0; e < explorerCount; e++) {
+                nearby[e] += counts[e];
+            }
+            int[] contacts = partitionContacts[p];
+            for (int k = 0; k < partitionContactSize[p]; k += 2) {
+                explorers[contacts[k]].getProximity().addContact(contacts[k + 1]);
+            }
+        }
+        for (int e = 0; e < explorerCount; e++) {
+            explorers[e].getProximity().setNearbyCount(nearby[e]);
+        }
+    }
+
+    // Adds the cells wholly inside a circle straight to the explorer's count and lists the explorer against
+    // every other cell its circle reaches; returns how many particles those cells hold
+    private long binExplorers(SpatialGrid grid, int explorerCount) {
+        int columns = grid.getColumns();
+        int cellCount = columns * grid.getRows();
+        int[] cellStart = grid.getCellStart();
+        if (cutStart.length != cellCount + 1) {
+            cutStart = new int[cellCount + 1];
+            cutCursor = new int[cellCount];
+        }
+        Arrays.fill(cutStart, 0);
+        long cutParticles = 0;
+
+        // Pass 1 counts the explorers per cell, pass 2 writes them behind the prefix sums
+        for (int pass = 0; pass < 2; pass++) {
+            for (int e = 0; e < explorerCount; e++) {
+                double cx = centreX[e], cy = centreY[e];
+                double r = tickRadius;
+                int cellSize = grid.getCellSize();
+                int firstColumn = Math.max(0, (int) ((cx - r) / cellSize)), lastColumn = Math.min(columns - 1, (int) ((cx + r) / cellSize));
+                int firstRow = Math.max(0, (int) ((cy - r) / cellSize)), lastRow = Math.min(grid.getRows() - 1, (int) ((cy + r) / cellSize));
+                for (int row = firstRow; row <= lastRow; row++) {
+                    double top = row * cellSize, bottom = top + cellSize;
+                    double nearY = cy - Math.max(top, Math.min(bottom, cy));
+                    double farY = Math.max(cy - top, bottom - cy);
+                    for (int column = firstColumn; column <= lastColumn; column++) {
+                        double left = column * cellSize, right = left + cellSize;
+                        double nearX = cx - Math.max(left, Math.min(right, cx));
+                        double nearestSquared = nearX * nearX + nearY * nearY;
+                        if (nearestSquared > r * r) {
+                            continue;
+                        }
+                        int cell = row * columns + column;
+                        double farX = Math.max(cx - left, right - cx);
+                        boolean inside = farX * farX + farY * farY <= r * r && nearestSquared >= CONTACT_DISTANCE_SQUARED;
+                        if (pass == 1) {
+                            if (!inside) {
+                                cutExplorers[cutCursor[cell]++] = e;
+                            }
+                        } else if (inside) {
+                            nearby[e] += cellStart[cell + 1] - cellStart[cell];
+                        } else {
+                            cutStart[cell + 1]++;
+                            cutParticles += cellStart[cell + 1] - cellStart[cell];
+                        }
+                    }
+                }
+            }
+            if (pass == 0) {
+                for (int cell = 0; cell < cellCount; cell++) {
+                    cutStart[cell + 1] += cutStart[cell];
+                }
+                System.arraycopy(cutStart, 0, cutCursor, 0, cellCount);
+                if (cutExplorers.length < cutStart[cellCount]) {
+                    cutExplorers = new int[Math.max(cutStart[cellCount], cutExplorers.length * 2)];
+                }
+            }
+        }
+        return cutParticles;
+    }
+
+    // Walks the particles of the partition's cells
+    private void testCells(int partition, int explorerCount, SpatialGrid grid, ParticleStore particles, int fromCell, int toCell) {
+        beginPartition(partition, explorerCount);
+        int[] cellStart = grid.getCellStart(), cellParticles = grid.getCellParticles();
+        for (int cell = fromCell; cell < toCell; cell++) {
+            int cutsFrom = cutStart[cell], cutsTo = cutStart[cell + 1];
+            if (cutsFrom == cutsTo) {
+                continue;
+            }
+            for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                test(partition, particles, cellParticles[k], cutsFrom, cutsTo);
+            }
+        }
+    }
+
+    // Walks the partition's range of the store
+    private void testSweep(int partition, int explorerCount, SpatialGrid grid, ParticleStore particles, int from, int to) {
+        beginPartition(partition, explorerCount);
+        int[] particleCell = grid.getParticleCell();
+        for (int i = from; i < to; i++) {
+            int cell = particleCell[i];
+            int cutsFrom = cutStart[cell], cutsTo = cutStart[cell + 1];
+            if (cutsFrom != cutsTo) {
+                test(partition, particles, i, cutsFrom, cutsTo);
+            }
+        }
+    }
+
+    private void test(int partition, ParticleStore particles, int i, int cutsFrom, int cutsTo) {
+        double px = particles.getX()[i], py = particles.getY()[i];
+        double radiusSquared = tickRadius * tickRadius;
+        int[] counts = partitionNearby[partition];
+        for (int k = cutsFrom; k < cutsTo; k++) {
+            int e = cutExplorers[k];
+            double dx = px - centreX[e], dy = py - centreY[e];
+            double distanceSquared = dx * dx + dy * dy;
+            if (distanceSquared <= radiusSquared) {
+                counts[e]++;
+                if (distanceSquared < CONTACT_DISTANCE_SQUARED) {
+                    addContact(partition, e, particles.getIds()[i]);
+                }
+            }
+        }
+    }
+
+    private void ensurePartitions(int partitions, int explorerCount) {
+        if (partitionNearby.length < partitions) {
+            partitionNearby = Arrays.copyOf(partitionNearby, partitions);
+            partitionContacts = Arrays.copyOf(partitionContacts, partitions);
+            partitionContactSize = Arrays.copyOf(partitionContactSize, partitions);
+        }
+        for (int p = 0; p < partitions; p++) {
+            if (partitionNearby[p] == null || partitionNearby[p].length < explorerCount) {
+                partitionNearby[p] = new int[Math.max(explorerCount, centreX.length)];
+            }
+            if (partitionContacts[p] == null) {
+                partitionContacts[p] = new int[32];
+            }
+        }
+    }
+
+    private void beginPartition(int partition, int explorerCount) {
+        Arrays.fill(partitionNearby[partition], 0, explorerCount, 0);
+        partitionContactSize[partition] = 0;
+    }
+
+    private void addContact(int partition, int explorer, int id) {
+        int[] contacts = partitionContacts[partition];
+        int size = partitionContactSize[partition];
+        if (size + 2 > contacts.length) {
+            contacts = partitionContacts[partition] = Arrays.copyOf(contacts, contacts.length * 2);
+        }
+        contacts[size] = explorer;
+        contacts[size + 1] = id;
+        partitionContactSize[partition] = size + 2;
+    }
+}
@@ -0,0 +1,327 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
+// Draws particles straight into the int pixels of an image instead of one fillOval call each. The frame is
+// split into horizontal stripes that are cleared and filled in parallel, each by exactly one task, so the
+// result is blitted with a single drawImage. Above the level-of-detail threshold the particles are binned into
+// a density grid first and dense cells are drawn as a heatmap, so the cost follows the resolution.
+public class RasterRenderer {
+    public static final int DEFAULT_LOD_THRESHOLD = 100_000;
+    private static final int MIN_STRIPE_HEIGHT = 16;
+    private static final int STRIPES_PER_THREAD = 2;
+    private static final int HALF_SIZE = Ball.SIZE / 2;
+    // Density cells are this many screen pixels square; cells with at most SPARSE_DENSITY particles keep their sprites
+    private static final int DENSITY_CELL = 2;
+    private static final int SPARSE_DENSITY = 1;
+    // Cells this full or fuller are drawn white
+    private static final int HEAT_LEVELS = 64;
+
+    private final int color;
+    private final int background;
+    private BufferedImage image;
+    private int[] pixels;
+    private int width, height;
+
+    // Per scale, the horizontal span of every sprite row: the same disc fillOval produces
+    private int spriteScale = 0;
+    private int spriteSize;
+    private int[] spanStart, spanEnd;
+
+    private volatile int lodThreshold = DEFAULT_LOD_THRESHOLD;
+    private final int[] heatPalette;
+    private int cellColumns, cellRows;
+    private int[][] partitionCounts = new int[0][];
+    private int[] density = new int[0];
+    // Density cell of each particle's center from pass 1, -1 off screen
+    private int[] particleCell = new int[0];
+    // Per partition, the particles it found in each stripe, then where it writes them in stripeParticles
+    private int[][] stripeCounts = new int[0][];
+    // The particles whose sprite touches each stripe, stripe after stripe; stripe s owns stripeStart[s] up to stripeStart[s + 1]
+    private int[] stripeStart = new int[0];
+    private int[] stripeParticles = new int[0];
+
+    public RasterRenderer(Color color, Color background) {
+        this.color = color.getRGB();
+        this.background = background.getRGB();
+        this.heatPalette = heatPalette(color);
+    }
+
+    // Particle count above which frames are drawn as a density map
+    public void setLodThreshold(int lodThreshold) {
+        this.lodThreshold = lodThreshold;
+    }
+
+    public int getLodThreshold() {
+        return lodThreshold;
+    }
+
+    // Renders the particles at screen = (world - origin) * scale and returns the image, valid until the next call
+    public BufferedImage render(ForkJoinPool pool, int width, int height, int count, double[] x, double[] y,
+                                double originX, double originY, int scale) {
+        resize(width, height);
+        prepareSprite(scale);
+        if (count > lodThreshold) {
+            renderDensity(pool, count, x, y, originX, originY, scale);
+            return image;
+        }
+        int stripes = Math.max(1, Math.min(pool.getParallelism() * STRIPES_PER_THREAD, height / MIN_STRIPE_HEIGHT));
+        binByStripe(pool, stripes, count, x, y, originX, originY, scale);
+        ParallelTasks.run(pool, stripes, stripe -> renderStripe(stripe,
+            ParallelTasks.rangeEnd(height, stripes, stripe - 1), ParallelTasks.rangeEnd(height, stripes, stripe), x, y, originX, originY, scale));
+        return image;
+    }
+
+    // Counting sort of the visible particles by stripe, so each stripe task only reads its own. Pass 1 counts per
+    // partition, the prefix sum gives every partition its slots in each stripe, pass 2 scatters into them. A
+    // sprite that crosses a stripe boundary is listed in every stripe it touches.
+    private void binByStripe(ForkJoinPool pool, int stripes, int count, double[] x, double[] y, double originX, double originY, int scale) {
+        int partitions = Math.max(1, pool.getParallelism());
+        if (stripeCounts.length < partitions || stripeCounts[0].length < stripes) {
+            stripeCounts = new int[partitions][stripes];
+        }
+        if (stripeStart.length < stripes + 1) {
+            stripeStart = new int[stripes + 1];
+        }
+        int[][] counts = stripeCounts;
+        int width = this.width, height = this.height;
+        int size = spriteSize;
+
+        ParallelTasks.run(pool, partitions, p -> {
+            int[] stripeCount = counts[p];
+            Arrays.fill(stripeCount, 0, stripes, 0);
+            int end = ParallelTasks.rangeEnd(count, partitions, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitions, p - 1); i < end; i++) {
+                int spriteX = spriteCorner(x[i], originX, scale);
+                int spriteY = spriteCorner(y[i], originY, scale);
+                if (spriteX >= width || spriteX + size <= 0 || spriteY >= height || spriteY + size <= 0) {
+                    continue;
+                }
+                int last = stripeOf(Math.min(spriteY + size, height) - 1, stripes, height);
+                for (int stripe = stripeOf(Math.max(spriteY, 0), stripes, height); stripe <= last; stripe++) {
+                    stripeCount[stripe]++;
+                }
+            }
+        });
+
+        int[] stripeStart = this.stripeStart;
+        int running = 0;
+        for (int stripe = 0; stripe < stripes; stripe++) {
+            stripeStart[stripe] = running;
+            for (int p = 0; p < partitions; p++) {
+                int partitionCount = counts[p][stripe];
+                counts[p][stripe] = running;
+                running += partitionCount;
+            }
+        }
+        stripeStart[stripes] = running;
+        if (stripeParticles.length < running) {
+            stripeParticles = new int[Math.max(running, stripeParticles.length + (stripeParticles.length >> 1))];
+        }
+        int[] stripeParticles = this.stripeParticles;
+
+        ParallelTasks.run(pool, partitions, p -> {
+            int[] writeOffsets = counts[p];
+            int end = ParallelTasks.rangeEnd(count, partitions, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitions, p - 1); i < end; i++) {
+                int spriteX = spriteCorner(x[i], originX, scale);
+                int spriteY = spriteCorner(y[i], originY, scale);
+                if (spriteX >= width || spriteX + size <= 0 || spriteY >= height || spriteY + size <= 0) {
+                    continue;
+                }
+                int last = stripeOf(Math.min(spriteY + size, height) - 1, stripes, height);
+                for (int stripe = stripeOf(Math.max(spriteY, 0), stripes, height); stripe <= last; stripe++) {
+                    stripeParticles[writeOffsets[stripe]++] = i;
+                }
+            }
+        });
+    }
+
+    private void renderStripe(int stripe, int top, int bottom, double[] x, double[] y, double originX, double originY, int scale) {
+        int[] pixels = this.pixels;
+        int width = this.width;
+        int size = spriteSize;
+        int[] spanStart = this.spanStart, spanEnd = this.spanEnd;
+        int[] stripeParticles = this.stripeParticles;
+        Arrays.fill(pixels, top * width, bottom * width, background);
+
+        for (int k = stripeStart[stripe], end = stripeStart[stripe + 1]; k < end; k++) {
+            int i = stripeParticles[k];
+            int spriteX = spriteCorner(x[i], originX, scale);
+            int spriteY = spriteCorner(y[i], originY, scale);
+            int firstRow = Math.max(spriteY, top), lastRow = Math.min(spriteY + size, bottom);
+            for (int row = firstRow; row < lastRow; row++) {
+                int spriteRow = row - spriteY;
+                int from = Math.max(0, spriteX + spanStart[spriteRow]);
+                int to = Math.min(width, spriteX + spanEnd[spriteRow]);
+                if (from < to) {
+                    int offset = row * width;
+                    Arrays.fill(pixels, offset + from, offset + to, color);
+                }
+            }
+        }
+    }
+
+    // Pass 1 bins the particle centres per partition, pass 2 sums the partitions per stripe of cells and paints
+    // the dense ones, pass 3 draws the sprites of particles in sparse cells, clipped to the sparse cells
+    private void renderDensity(ForkJoinPool pool, int count, double[] x, double[] y, double originX, double originY, int scale) {
+        int columns = cellColumns, rows = cellRows;
+        int cellCount = columns * rows;
+        int partitions = Math.max(1, pool.getParallelism());
+        if (partitionCounts.length < partitions || partitionCounts[0].length != cellCount) {
+            partitionCounts = new int[partitions][cellCount];
+        }
+        if (particleCell.length < count) {
+            particleCell = new int[Math.max(count, particleCell.length + (particleCell.length >> 1))];
+        }
+        int[][] counts = partitionCounts;
+        int[] particleCell = this.particleCell;
+        int[] density = this.density;
+        int width = this.width, height = this.height;
+        int size = spriteSize;
+
+        ParallelTasks.run(pool, partitions, p -> {
+            int[] cells = counts[p];
+            Arrays.fill(cells, 0);
+            int end = ParallelTasks.rangeEnd(count, partitions, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitions, p - 1); i < end; i++) {
+                int centerX = spriteCorner(x[i], originX, scale) + size / 2;
+                int centerY = spriteCorner(y[i], originY, scale) + size / 2;
+                int cell = -1;
+                if (centerX >= 0 && centerX < width && centerY >= 0 && centerY < height) {
+                    cell = (centerY / DENSITY_CELL) * columns + centerX / DENSITY_CELL;
+                    cells[cell]++;
+                }
+                particleCell[i] = cell;
+            }
+        });
+
+        int stripes = Math.max(1, Math.min(pool.getParallelism() * STRIPES_PER_THREAD, rows));
+        ParallelTasks.run(pool, stripes, stripe -> {
+            int[] pixels = this.pixels;
+            int[] palette = heatPalette;
+            int end = ParallelTasks.rangeEnd(rows, stripes, stripe);
+            for (int row = ParallelTasks.rangeEnd(rows, stripes, stripe - 1); row < end; row++) {
+                int top = row * DENSITY_CELL, bottom = Math.min(height, top + DENSITY_CELL);
+                for (int column = 0; column < columns; column++) {
+                    int cell = row * columns + column;
+                    int total = 0;
+                    for (int p = 0; p < partitions; p++) {
+                        total += counts[p][cell];
+                    }
+                    density[cell] = total;
+                    int pixel = total <= SPARSE_DENSITY ? background : palette[Math.min(total, HEAT_LEVELS)];
+                    int left = column * DENSITY_CELL, right = Math.min(width, left + DENSITY_CELL);
+                    for (int pixelRow = top; pixelRow < bottom; pixelRow++) {
+                        for (int offset = pixelRow * width + left, last = pixelRow * width + right; offset < last; offset++) {
+                            pixels[offset] = pixel;
+                        }
+                    }
+                }
+            }
+        });
+
+        // Sprites near a partition boundary may overlap; both tasks write the same color, so the race is harmless
+        ParallelTasks.run(pool, partitions, p -> {
+            int[] pixels = this.pixels;
+            int[] spanStart = this.spanStart, spanEnd = this.spanEnd;
+            int end = ParallelTasks.rangeEnd(count, partitions, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitions, p - 1); i < end; i++) {
+                int cell = particleCell[i];
+                if (cell >= 0 && density[cell] > SPARSE_DENSITY) {
+                    continue;
+                }
+                int spriteX = spriteCorner(x[i], originX, scale);
+                int spriteY = spriteCorner(y[i], originY, scale);
+                if (spriteX >= width || spriteX + size <= 0 || spriteY >= height || spriteY + size <= 0) {
+                    continue;
+                }
+                int firstRow = Math.max(spriteY, 0), lastRow = Math.min(spriteY + size, height);
+                for (int row = firstRow; row < lastRow; row++) {
+                    int spriteRow = row - spriteY;
+                    int from = Math.max(0, spriteX + spanStart[spriteRow]);
+                    int to = Math.min(width, spriteX + spanEnd[spriteRow]);
+                    int cellRow = (row / DENSITY_CELL) * columns;
+                    for (int column = from; column < to; column++) {
+                        if (density[cellRow + column / DENSITY_CELL] <= SPARSE_DENSITY) {
+                            pixels[row * width + column] = color;
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    // The stripe holding a row, the inverse of the rangeEnd split of the rows into stripes
+    private static int stripeOf(int row, int stripes, int height) {
+        return (int) ((((long) row + 1) * stripes - 1) / height);
+    }
+
+    // Screen coordinate of a sprite's top-left corner: the corner Ball.draw uses, then scaled
+    private static int spriteCorner(double position, double origin, int scale) {
+        return (int) Math.floor((Math.floor(position - HALF_SIZE) - origin) * scale);
+    }
+
+    // Ramps from the particle color for the first dense cells up to white, on a log scale
+    private static int[] heatPalette(Color color) {
+        int[] palette = new int[HEAT_LEVELS + 1];
+        double span = Math.log(HEAT_LEVELS - SPARSE_DENSITY);
+        for (int level = SPARSE_DENSITY + 1; level <= HEAT_LEVELS; level++) {
+            double heat = Math.log(level - SPARSE_DENSITY) / span;
+            int red = (int) (color.getRed() + (255 - color.getRed()) * heat);
+            int green = (int) (color.getGreen() + (255 - color.getGreen()) * heat);
+            int blue = (int) (color.getBlue() + (255 - color.getBlue()) * heat);
+            palette[level] = new Color(red, green, blue).getRGB();
+        }
+        return palette;
+    }
+
+    private void resize(int width, int height) {
+        width = Math.max(1, width);
+        height = Math.max(1, height);
+        if (image != null && width == this.width && height == this.height) {
+            return;
+        }
+        this.width = width;
+        this.height = height;
+        image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        cellColumns = (width + DENSITY_CELL - 1) / DENSITY_CELL;
+        cellRows = (height + DENSITY_CELL - 1) / DENSITY_CELL;
+        density = new int[cellColumns * cellRows];
+    }
+
+    // Rasterizes the sprite once with Java2D so it matches what fillOval drew before
+    private void prepareSprite(int scale) {
+        if (scale == spriteScale) {
+            return;
+        }
+        int size = Ball.SIZE * scale;
+        BufferedImage sprite = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = sprite.createGraphics();
+        g.scale(scale, scale);
+        g.setColor(Color.WHITE);
+        g.fillOval(0, 0, Ball.SIZE, Ball.SIZE);
+        g.dispose();
+
+        int[] start = new int[size], end = new int[size];
+        for (int row = 0; row < size; row++) {
+            int first = size, last = 0;
+            for (int column = 0; column < size; column++) {
+                if ((sprite.getRGB(column, row) >>> 24) != 0) {
+                    first = Math.min(first, column);
+                    last = column + 1;
+                }
+            }
+            start[row] = first;
+            end[row] = Math.max(first, last);
+        }
+        spanStart = start;
+        spanEnd = end;
+        spriteSize = size;
+        spriteScale = scale;
+    }
+}
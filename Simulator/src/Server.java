@@ -0,0 +1,563 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+public class Server {
+    public static final int PORT = 12345;
+    // Extra world pixels around an explorer's view, so particles are known a moment before they scroll in
+    static final int INTEREST_MARGIN = 64;
+    // A few selector threads serve every connection, however many explorers are connected
+    private static final int IO_THREADS = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() / 2));
+    // A client with more than this queued is behind and skips ticks until it drains
+    static final int QUEUE_LIMIT_BYTES = 256 * 1024;
+    // A client behind for this long only gets every DOWNGRADED_INTERVAL-th tick, for twice as long it is dropped
+    static final int DOWNGRADE_AFTER_SECONDS = 2;
+    static final int DROP_AFTER_SECONDS = 10;
+    static final int DOWNGRADED_INTERVAL = 4;
+    private static final int REPORT_INTERVAL_SECONDS = 10;
+
+    private final ConcurrentLinkedQueue<ClientHandler> clients = new ConcurrentLinkedQueue<>();
+    private final ThreadController threadManager;
+    private final int port;
+    private final byte updateMode;
+    private final AtomicLong droppedClients = new AtomicLong();
+    private final AtomicLong coalescedTicks = new AtomicLong();
+    private long reportedDrops = 0, reportedCoalesced = 0;
+    private final AtomicLong sentBytes = new AtomicLong();
+    private final AtomicLong sentFrames = new AtomicLong();
+    private final LatencyHistogram encodeTime = new LatencyHistogram();
+    private final LatencyHistogram broadcastTime = new LatencyHistogram();
+    private volatile Metrics metrics;
+    private int positionScale;
+    private IoLoop[] ioLoops;
+    private int nextLoop = 0;
+
+    public Server(ThreadController threadManager) {
+        this(threadManager, PORT);
+    }
+
+    public Server(ThreadController threadManager, int port) {
+        this(threadManager, port, Protocol.UPDATE_DEAD_RECKONING);
+    }
+
+    // updateMode is Protocol.UPDATE_STATE or Protocol.UPDATE_DEAD_RECKONING
+    public Server(ThreadController threadManager, int port, byte updateMode) {
+        this.threadManager = threadManager;
+        this.port = port;
+        this.updateMode = updateMode;
+    }
+
+    public void start() {
+        new Thread(() -> {
+            // The world size, and with it the position scale, is only final once the first tick ran
+            try {
+                threadManager.awaitTickAfter(0);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+                return;
+            }
+            positionScale = Protocol.positionScale(threadManager.getCanvasWidth(), threadManager.getCanvasHeight());
+            startServer();
+            startBroadcaster();
+        }).start();
+    }
+
+    private void startServer() {
+        try {
+            ioLoops = new IoLoop[IO_THREADS];
+            for (int i = 0; i < ioLoops.length; i++) {
+                ioLoops[i] = new IoLoop(this);
+            }
+            ServerSocketChannel serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(port));
+            serverChannel.configureBlocking(false);
+            // The first loop also accepts; connections are spread over all loops round robin
+            ioLoops[0].registerAcceptor(serverChannel);
+            for (int i = 0; i < ioLoops.length; i++) {
+                new Thread(ioLoops[i], "server-io-" + i).start();
+            }
+            System.out.println("Server started on port " + port);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    // Runs on the accepting I/O thread
+    void accept(SocketChannel channel) throws IOException {
+        channel.configureBlocking(false);
+        IoLoop loop = ioLoops[nextLoop];
+        nextLoop = (nextLoop + 1) % ioLoops.length;
+        ClientHandler clientHandler = new ClientHandler(this, channel, loop, threadManager, new FrameEncoder(positionScale, updateMode));
+        // HELLO is queued before the client can receive any state frame
+        clientHandler.sendFrames(FrameEncoder.encodeHello(clientHandler.getExplorer().getId(),
+            threadManager.getCanvasWidth(), threadManager.getCanvasHeight(), threadManager.getTickRate(), positionScale, updateMode));
+        clients.add(clientHandler);
+        Metrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.addClient(clientHandler.getStats());
+        }
+        loop.register(clientHandler);
+    }
+
+    public void registerMetrics(Metrics metrics) {
+        this.metrics = metrics;
+        metrics.histogram("client_encode", "Encoding one client's frames of a tick, under the read lock", encodeTime);
+        metrics.histogram("broadcast", "Encoding and queueing a tick for every client", broadcastTime);
+        metrics.gauge("clients", "Connected explorer clients", this::getClientCount);
+        metrics.gauge("queued_bytes", "Bytes waiting in all outbound buffers", this::getQueuedBytes);
+        metrics.gauge("max_queued_bytes", "Bytes waiting in the fullest outbound buffer", this::getMaxQueuedBytes);
+        metrics.gauge("downgraded_clients", "Clients served at a reduced tick rate", this::getDowngradedClientCount);
+        metrics.gauge("coalesced_ticks_total", "Client ticks skipped because the client was behind", this::getCoalescedTicks);
+        metrics.gauge("dropped_clients_total", "Clients disconnected for staying behind", this::getDroppedClients);
+        metrics.gauge("sent_bytes_total", "Bytes written to all clients", sentBytes::get);
+        metrics.gauge("sent_frames_total", "Frames queued for all clients", sentFrames::get);
+        metrics.clients(() -> clients.stream().map(ClientHandler::getStats).collect(Collectors.toList()));
+    }
+
+    private void startBroadcaster() {
+        new Thread(() -> {
+            long lastTick = 0;
+            // A deadline rather than a tick count, since ticks are skipped exactly when broadcasting falls behind
+            long nextReport = System.nanoTime() + TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+            while (true) {
+                try {
+                    lastTick = threadManager.awaitTickAfter(lastTick);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                    return;
+                }
+                broadcastTick(lastTick);
+                if (System.nanoTime() - nextReport >= 0) {
+                    reportQueues();
+                    nextReport = System.nanoTime() + TimeUnit.SECONDS.toNanos(REPORT_INTERVAL_SECONDS);
+                }
+            }
+        }).start();
+    }
+
+    // Each client gets the particles around its own explorer; encoding happens under the read lock,
+    // the socket writes after it is released
+    private void broadcastTick(long tick) {
+        long start = System.nanoTime();
+        List<Explorer> explorers = threadManager.getExplorers();
+        threadManager.getReadLock().lock();
+        try {
+            ParticleStore particles = threadManager.getParticles();
+            SpatialGrid grid = threadManager.getSpatialGrid();
+            for (ClientHandler client : clients) {
+                if (client.acceptsTick()) {
+                    long encodeStart = System.nanoTime();
+                    client.encodeTick(particles, grid, explorers, tick);
+                    encodeTime.recordSince(encodeStart);
+                }
+            }
+        } finally {
+            threadManager.getReadLock().unlock();
+        }
+
+        for (ClientHandler client : clients) {
+            client.sendEncodedTick();
+        }
+        broadcastTime.recordSince(start);
+    }
+
+    void removeClient(ClientHandler client) {
+        clients.remove(client);
+        Metrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.removeClient(client.getStats());
+        }
+    }
+
+    void recordSentBytes(long bytes) {
+        sentBytes.addAndGet(bytes);
+    }
+
+    void recordSentFrames(int frames) {
+        sentFrames.addAndGet(frames);
+    }
+
+    void recordCoalescedTick() {
+        coalescedTicks.incrementAndGet();
+    }
+
+    void recordDroppedClient() {
+        droppedClients.incrementAndGet();
+    }
+
+    public int getClientCount() {
+        return clients.size();
+    }
+
+    public long getQueuedBytes() {
+        long queued = 0;
+        for (ClientHandler client : clients) {
+            queued += client.getQueuedBytes();
+        }
+        return queued;
+    }
+
+    public int getMaxQueuedBytes() {
+        int max = 0;
+        for (ClientHandler client : clients) {
+            max = Math.max(max, client.getQueuedBytes());
+        }
+        return max;
+    }
+
+    public int getDowngradedClientCount() {
+        int downgraded = 0;
+        for (ClientHandler client : clients) {
+            if (client.isDowngraded()) {
+                downgraded++;
+            }
+        }
+        return downgraded;
+    }
+
+    public long getCoalescedTicks() {
+        return coalescedTicks.get();
+    }
+
+    public long getDroppedClients() {
+        return droppedClients.get();
+    }
+
+    // Only speaks up when some client fell behind since the last report
+    private void reportQueues() {
+        long coalesced = coalescedTicks.get(), drops = droppedClients.get();
+        if (coalesced == reportedCoalesced && drops == reportedDrops) {
+            return;
+        }
+        System.out.printf("Clients: %d, queued: %d KB (max %d KB), downgraded: %d, coalesced ticks: %d, dropped: %d%n",
+            getClientCount(), getQueuedBytes() / 1024, getMaxQueuedBytes() / 1024, getDowngradedClientCount(),
+            coalesced - reportedCoalesced, drops - reportedDrops);
+        reportedCoalesced = coalesced;
+        reportedDrops = drops;
+    }
+}
+
+// One selector thread serving many connections: accepts (first loop only), reads commands and
+// writes queued frames without blocking
+class IoLoop implements Runnable {
+    private final Server server;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<ClientHandler> newClients = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ClientHandler> pendingWrites = new ConcurrentLinkedQueue<>();
+
+    IoLoop(Server server) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+    }
+
+    // Only before the loop thread starts
+    void registerAcceptor(ServerSocketChannel serverChannel) throws IOException {
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    void register(ClientHandler client) {
+        newClients.add(client);
+        selector.wakeup();
+    }
+
+    // Called by whichever thread queued frames; wakeups that pile up before the next select collapse into one
+    void requestWrite(ClientHandler client) {
+        pendingWrites.add(client);
+        selector.wakeup();
+    }
+
+    @Override
+    public void run() {
+        while (true) {
+            try {
+                selector.select();
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+
+            ClientHandler client;
+            while ((client = newClients.poll()) != null) {
+                client.register(selector);
+            }
+            while ((client = pendingWrites.poll()) != null) {
+                client.flush();
+            }
+
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isAcceptable()) {
+                    accept((ServerSocketChannel) key.channel());
+                    continue;
+                }
+                ClientHandler handler = (ClientHandler) key.attachment();
+                if (key.isReadable()) {
+                    handler.read();
+                }
+                if (key.isValid() && key.isWritable()) {
+                    handler.flush();
+                }
+            }
+        }
+    }
+
+    private void accept(ServerSocketChannel serverChannel) {
+        try {
+            SocketChannel channel;
+            while ((channel = serverChannel.accept()) != null) {
+                server.accept(channel);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+}
+
+class ClientHandler {
+    // Longer lines than this are not commands and are dropped
+    private static final int MAX_COMMAND_LENGTH = 256;
+    private static final int INITIAL_OUTBOUND_CAPACITY = 64 * 1024;
+
+    private final Server server;
+    private final SocketChannel channel;
+    private final IoLoop loop;
+    private final Explorer explorer;
+    private final ThreadController threadManager;
+    private final FrameEncoder encoder;
+    private final ClientStats stats;
+    private final int downgradeAfterTicks, dropAfterTicks;
+
+    // Touched by the broadcaster only
+    private ByteBuffer[] encodedFrames;
+    private int ticksBehind = 0;
+    private int ticksCaughtUp = 0;
+    private int downgradedTicks = 0;
+    private volatile boolean downgraded = false;
+
+    // Registered by the I/O thread, cancelled by whichever thread closes
+    private volatile SelectionKey key;
+    private final ByteBuffer inbound = ByteBuffer.allocate(MAX_COMMAND_LENGTH);
+    // Queued frames in write mode, guarded by this
+    private ByteBuffer outbound = ByteBuffer.allocateDirect(INITIAL_OUTBOUND_CAPACITY);
+    private boolean writeRequested = false;
+    private volatile boolean closed = false;
+
+    public ClientHandler(Server server, SocketChannel channel, IoLoop loop, ThreadController threadManager, FrameEncoder encoder) {
+        this.server = server;
+        this.channel = channel;
+        this.loop = loop;
+        this.threadManager = threadManager;
+        this.encoder = encoder;
+        this.downgradeAfterTicks = threadManager.getTickRate() * Server.DOWNGRADE_AFTER_SECONDS;
+        this.dropAfterTicks = threadManager.getTickRate() * Server.DROP_AFTER_SECONDS;
+        this.explorer = threadManager.createExplorer(threadManager.getCanvasWidth() / 2, threadManager.getCanvasHeight() / 2);
+        this.stats = new ClientStats(explorer.getId(), this::getQueuedBytes, this::isDowngraded);
+    }
+
+    void register(Selector selector) {
+        if (closed) {
+            return;
+        }
+        try {
+            key = channel.register(selector, SelectionKey.OP_READ, this);
+        } catch (IOException e) {
+            close();
+            return;
+        }
+        flush();
+    }
+
+    // Splits what arrived into newline-terminated commands and hands them to the tick thread
+    void read() {
+        int read;
+        try {
+            read = channel.read(inbound);
+        } catch (IOException e) {
+            read = -1;
+        }
+        if (read < 0) {
+            close();
+            return;
+        }
+
+        inbound.flip();
+        int lineStart = 0;
+        for (int i = 0; i < inbound.limit(); i++) {
+            if (inbound.get(i) == '\n') {
+                String message = new String(inbound.array(), lineStart, i - lineStart, StandardCharsets.US_ASCII).trim();
+                ExplorerCommand command = ExplorerCommand.parse(explorer, message);
+                if (command != null) {
+                    threadManager.submitCommand(command);
+                }
+                lineStart = i + 1;
+            }
+        }
+        inbound.position(lineStart);
+        inbound.compact();
+        if (!inbound.hasRemaining()) {
+            inbound.clear();
+        }
+    }
+
+    // Writes as much as the socket takes and waits for OP_WRITE for the rest
+    void flush() {
+        synchronized (this) {
+            if (closed || key == null) {
+                return;
+            }
+            try {
+                outbound.flip();
+                int written = channel.write(outbound);
+                outbound.compact();
+                stats.recordSentBytes(written);
+                server.recordSentBytes(written);
+                boolean drained = outbound.position() == 0;
+                writeRequested = !drained;
+                key.interestOps(drained ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                return;
+            } catch (IOException e) {
+                outbound.clear();
+            }
+        }
+        close();
+    }
+
+    // Safe from any thread; the first call releases the connection and the explorer
+    void close() {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            outbound.clear();
+        }
+        SelectionKey key = this.key;
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        server.removeClient(this);
+        threadManager.removeExplorer(explorer);
+    }
+
+    public Explorer getExplorer() {
+        return explorer;
+    }
+
+    // The area of interest is the explorer's view plus a margin; the first tick sends everything in it as entering
+    public void encodeTick(ParticleStore particles, SpatialGrid grid, List<Explorer> explorers, long tick) {
+        double halfWidth = Explorer.VIEW_WIDTH / 2.0 + Server.INTEREST_MARGIN;
+        double halfHeight = Explorer.VIEW_HEIGHT / 2.0 + Server.INTEREST_MARGIN;
+        double x = explorer.getX(), y = explorer.getY();
+        ByteBuffer[] particleFrames = encoder.encodeParticlesInArea(particles, grid, x - halfWidth, y - halfHeight, x + halfWidth, y + halfHeight, tick);
+        ByteBuffer proximity = encoder.encodeProximity(explorer.getProximity(), tick);
+        int count = particleFrames.length;
+        ByteBuffer[] frames = Arrays.copyOf(particleFrames, count + (proximity != null ? 2 : 1));
+        if (proximity != null) {
+            frames[count++] = proximity;
+        }
+        frames[count] = encoder.encodeExplorers(explorers, tick, true);
+        encodedFrames = frames;
+    }
+
+    // Decides whether this tick is encoded for the client. While its queue is over the limit the tick is
+    // skipped; the encoder still holds the last state it queued, so the next encode carries only the newest
+    // state of every particle that changed meanwhile rather than each intermediate one
+    public boolean acceptsTick() {
+        if (getQueuedBytes() > Server.QUEUE_LIMIT_BYTES) {
+            ticksBehind++;
+            ticksCaughtUp = 0;
+            server.recordCoalescedTick();
+            if (ticksBehind >= downgradeAfterTicks) {
+                downgraded = true;
+            }
+            return false;
+        }
+        ticksBehind = 0;
+        if (!downgraded) {
+            return true;
+        }
+        // A downgraded client gets its full rate back once it kept up for as long as it took to downgrade it
+        if (++ticksCaughtUp >= downgradeAfterTicks) {
+            downgraded = false;
+            return true;
+        }
+        return ++downgradedTicks % Server.DOWNGRADED_INTERVAL == 0;
+    }
+
+    public void sendEncodedTick() {
+        if (ticksBehind > dropAfterTicks) {
+            System.out.println("Dropping client " + explorer.getId() + ", " + getQueuedBytes() / 1024 + " KB behind");
+            server.recordDroppedClient();
+            close();
+            return;
+        }
+        ByteBuffer[] frames = encodedFrames;
+        if (frames != null) {
+            encodedFrames = null;
+            sendFrames(frames);
+        }
+    }
+
+    public synchronized int getQueuedBytes() {
+        return outbound.position();
+    }
+
+    public boolean isDowngraded() {
+        return downgraded;
+    }
+
+    public ClientStats getStats() {
+        return stats;
+    }
+
+    // Copies the frames into the outbound buffer; the I/O thread writes everything queued in one go
+    public void sendFrames(ByteBuffer... frames) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            int bytes = 0;
+            for (ByteBuffer frame : frames) {
+                bytes += frame.remaining();
+            }
+            if (outbound.remaining() < bytes) {
+                ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(outbound.capacity() * 2, outbound.position() + bytes));
+                outbound.flip();
+                grown.put(outbound);
+                outbound = grown;
+            }
+            for (ByteBuffer frame : frames) {
+                outbound.put(frame);
+            }
+            stats.recordSentFrames(frames.length);
+            server.recordSentFrames(frames.length);
+            if (writeRequested) {
+                return;
+            }
+            writeRequested = true;
+        }
+        loop.requestWrite(this);
+    }
+}
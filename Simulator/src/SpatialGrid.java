@@ -0,0 +1,154 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.IntConsumer;
+
+public class SpatialGrid {
+    public static final int DEFAULT_CELL_SIZE = 32;
+
+    private final int cellSize;
+    private final int columns, rows;
+
+    // Counting-sort layout: the particles of cell c are cellParticles[cellStart[c] .. cellStart[c + 1])
+    private final int[] cellStart;
+    private int[] cellParticles = new int[0];
+    private int[] particleCell = new int[0];
+    private int[][] partitionOffsets = new int[0][];
+    private int indexedCount = 0;
+
+    public SpatialGrid(int width, int height) {
+        this(width, height, DEFAULT_CELL_SIZE);
+    }
+
+    public SpatialGrid(int width, int height, int cellSize) {
+        this.cellSize = cellSize;
+        this.columns = Math.max(1, (width + cellSize - 1) / cellSize);
+        this.rows = Math.max(1, (height + cellSize - 1) / cellSize);
+        this.cellStart = new int[columns * rows + 1];
+    }
+
+    // Rebuilds the index from the current positions, splitting the store into the given number of partitions
+    public void rebuild(ParticleStore store, ForkJoinPool pool, int partitions) {
+        int count = store.size();
+        int cellCount = columns * rows;
+        partitions = Math.max(1, Math.min(partitions, count));
+        if (particleCell.length < count) {
+            int capacity = Math.max(count, particleCell.length + (particleCell.length >> 1));
+            particleCell = new int[capacity];
+            cellParticles = new int[capacity];
+        }
+        if (partitionOffsets.length < partitions) {
+            partitionOffsets = new int[partitions][cellCount];
+        }
+
+        double[] x = store.getX();
+        double[] y = store.getY();
+        int[] particleCell = this.particleCell;
+        int[] cellParticles = this.cellParticles;
+        int[][] offsets = this.partitionOffsets;
+        int partitionCount = partitions;
+
+        // Pass 1: each partition bins its own range and counts particles per cell
+        ParallelTasks.run(pool, partitionCount, p -> {
+            int[] counts = offsets[p];
+            Arrays.fill(counts, 0);
+            int end = ParallelTasks.rangeEnd(count, partitionCount, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitionCount, p - 1); i < end; i++) {
+                int cell = cellOf(x[i], y[i]);
+                particleCell[i] = cell;
+                counts[cell]++;
+            }
+        });
+
+        // Pass 2: prefix sums turn the per-partition counts into write offsets
+        int running = 0;
+        for (int cell = 0; cell < cellCount; cell++) {
+            cellStart[cell] = running;
+            for (int p = 0; p < partitionCount; p++) {
+                int cellCountInPartition = offsets[p][cell];
+                offsets[p][cell] = running;
+                running += cellCountInPartition;
+            }
+        }
+        cellStart[cellCount] = running;
+
+        // Pass 3: each partition scatters its particles into the slots it reserved
+        ParallelTasks.run(pool, partitionCount, p -> {
+            int[] writeOffsets = offsets[p];
+            int end = ParallelTasks.rangeEnd(count, partitionCount, p);
+            for (int i = ParallelTasks.rangeEnd(count, partitionCount, p - 1); i < end; i++) {
+                cellParticles[writeOffsets[particleCell[i]]++] = i;
+            }
+        });
+
+        indexedCount = count;
+    }
+
+    public void clear() {
+        Arrays.fill(cellStart, 0);
+        indexedCount = 0;
+    }
+
+    // Visits the store index of every particle inside the rectangle, touching only the overlapping cells
+    public void query(ParticleStore store, double left, double top, double right, double bottom, IntConsumer visitor) {
+        if (indexedCount == 0 || right < left || bottom < top) {
+            return;
+        }
+        double[] x = store.getX();
+        double[] y = store.getY();
+        int firstColumn = clampColumn(left), lastColumn = clampColumn(right);
+        int firstRow = clampRow(top), lastRow = clampRow(bottom);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                int cell = row * columns + column;
+                int start = cellStart[cell], end = cellStart[cell + 1];
+                boolean inside = column * cellSize >= left && (column + 1) * cellSize <= right
+                    && row * cellSize >= top && (row + 1) * cellSize <= bottom;
+                for (int k = start; k < end; k++) {
+                    int i = cellParticles[k];
+                    if (inside || (x[i] >= left && x[i] <= right && y[i] >= top && y[i] <= bottom)) {
+                        visitor.accept(i);
+                    }
+                }
+            }
+        }
+    }
+
+    // Read-only views of the counting-sort layout for passes that walk whole cells; valid until the next rebuild
+    int[] getCellStart() {
+        return cellStart;
+    }
+
+    int[] getCellParticles() {
+        return cellParticles;
+    }
+
+    // The cell of every indexed particle, by store index
+    int[] getParticleCell() {
+        return particleCell;
+    }
+
+    public int getCellSize() {
+        return cellSize;
+    }
+
+    public int getColumns() {
+        return columns;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    private int cellOf(double x, double y) {
+        return clampRow(y) * columns + clampColumn(x);
+    }
+
+    private int clampColumn(double x) {
+        return Math.max(0, Math.min(columns - 1, (int) (x / cellSize)));
+    }
+
+    private int clampRow(double y) {
+        return Math.max(0, Math.min(rows - 1, (int) (y / cellSize)));
+    }
+}
@@ -0,0 +1,131 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class SpawnBatch {
+    private static final int CHUNK_SIZE = 8192;
+
+    private final int count;
+    private final double[] x, y, vx, vy;
+
+    private SpawnBatch(int count) {
+        this.count = count;
+        this.x = new double[count];
+        this.y = new double[count];
+        this.vx = new double[count];
+        this.vy = new double[count];
+    }
+
+    public static SpawnBatch of(double[] x, double[] y, double[] vx, double[] vy) {
+        SpawnBatch batch = new SpawnBatch(x.length);
+        System.arraycopy(x, 0, batch.x, 0, batch.count);
+        System.arraycopy(y, 0, batch.y, 0, batch.count);
+        System.arraycopy(vx, 0, batch.vx, 0, batch.count);
+        System.arraycopy(vy, 0, batch.vy, 0, batch.count);
+        return batch;
+    }
+
+    public static SpawnBatch atPoint(int n, int x, int y, double angle, double velocity, ForkJoinPool pool) {
+        double vx = Math.cos(angle) * velocity;
+        double vy = Math.sin(angle) * velocity;
+        return generate(n, pool, (batch, i) -> batch.set(i, x, y, vx, vy));
+    }
+
+    public static SpawnBatch uniformDistance(int n, int x1, int y1, int x2, int y2, double angle, double velocity, ForkJoinPool pool) {
+        double deltaX = step(x2 - x1, n);
+        double deltaY = step(y2 - y1, n);
+        double vx = Math.cos(angle) * velocity;
+        double vy = Math.sin(angle) * velocity;
+        return generate(n, pool, (batch, i) -> batch.set(i, x1 + (int) (i * deltaX), y1 + (int) (i * deltaY), vx, vy));
+    }
+
+    public static SpawnBatch uniformAngle(int n, int x, int y, double startTheta, double endTheta, double velocity, ForkJoinPool pool) {
+        double deltaTheta = step(endTheta - startTheta, n);
+        return generate(n, pool, (batch, i) -> {
+            double angle = startTheta + i * deltaTheta;
+            batch.set(i, x, y, Math.cos(angle) * velocity, Math.sin(angle) * velocity);
+        });
+    }
+
+    public static SpawnBatch uniformVelocity(int n, int x, int y, double angle, double startVelocity, double endVelocity, ForkJoinPool pool) {
+        double deltaVelocity = step(endVelocity - startVelocity, n);
+        double cos = Math.cos(angle);
+        double sin = Math.sin(angle);
+        return generate(n, pool, (batch, i) -> {
+            double velocity = startVelocity + i * deltaVelocity;
+            batch.set(i, x, y, cos * velocity, sin * velocity);
+        });
+    }
+
+    // A single particle batch would otherwise divide by zero
+    private static double step(double span, int n) {
+        return n > 1 ? span / (n - 1) : 0;
+    }
+
+    private static SpawnBatch generate(int n, ForkJoinPool pool, Generator generator) {
+        SpawnBatch batch = new SpawnBatch(Math.max(0, n));
+        if (batch.count <= CHUNK_SIZE) {
+            for (int i = 0; i < batch.count; i++) {
+                generator.generate(batch, i);
+            }
+        } else {
+            pool.invoke(new GenerateTask(batch, generator, 0, batch.count));
+        }
+        return batch;
+    }
+
+    private void set(int i, double x, double y, double vx, double vy) {
+        this.x[i] = x;
+        this.y[i] = y;
+        this.vx[i] = vx;
+        this.vy[i] = vy;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public double[] getX() {
+        return x;
+    }
+
+    public double[] getY() {
+        return y;
+    }
+
+    public double[] getVx() {
+        return vx;
+    }
+
+    public double[] getVy() {
+        return vy;
+    }
+
+    private interface Generator {
+        void generate(SpawnBatch batch, int i);
+    }
+
+    private static class GenerateTask extends RecursiveAction {
+        private final SpawnBatch batch;
+        private final Generator generator;
+        private final int from, to;
+
+        GenerateTask(SpawnBatch batch, Generator generator, int from, int to) {
+            this.batch = batch;
+            this.generator = generator;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= CHUNK_SIZE) {
+                for (int i = from; i < to; i++) {
+                    generator.generate(batch, i);
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new GenerateTask(batch, generator, from, mid), new GenerateTask(batch, generator, mid, to));
+        }
+    }
+}
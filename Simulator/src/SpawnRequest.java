@@ -0,0 +1,84 @@
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.concurrent.ForkJoinPool;
+
+// The parameters of one Particle Manager spawn. Generating it always gives the same batch, so the journal
+// stores the request rather than the particles.
+public class SpawnRequest {
+    static final byte AT_POINT = 0;
+    static final byte UNIFORM_DISTANCE = 1;
+    static final byte UNIFORM_ANGLE = 2;
+    static final byte UNIFORM_VELOCITY = 3;
+    private static final int[] VALUE_COUNTS = {4, 6, 5, 5};
+
+    private final byte kind;
+    private final int count;
+    // Positions are ints in every kind, so they round-trip through the doubles exactly
+    private final double[] values;
+
+    private SpawnRequest(byte kind, int count, double... values) {
+        this.kind = kind;
+        this.count = count;
+        this.values = values;
+    }
+
+    public static SpawnRequest atPoint(int n, int x, int y, double angle, double velocity) {
+        return new SpawnRequest(AT_POINT, n, x, y, angle, velocity);
+    }
+
+    public static SpawnRequest uniformDistance(int n, int x1, int y1, int x2, int y2, double angle, double velocity) {
+        return new SpawnRequest(UNIFORM_DISTANCE, n, x1, y1, x2, y2, angle, velocity);
+    }
+
+    public static SpawnRequest uniformAngle(int n, int x, int y, double startTheta, double endTheta, double velocity) {
+        return new SpawnRequest(UNIFORM_ANGLE, n, x, y, startTheta, endTheta, velocity);
+    }
+
+    public static SpawnRequest uniformVelocity(int n, int x, int y, double angle, double startVelocity, double endVelocity) {
+        return new SpawnRequest(UNIFORM_VELOCITY, n, x, y, angle, startVelocity, endVelocity);
+    }
+
+    public SpawnBatch generate(ForkJoinPool pool) {
+        double[] v = values;
+        switch (kind) {
+            case AT_POINT:
+                return SpawnBatch.atPoint(count, (int) v[0], (int) v[1], v[2], v[3], pool);
+            case UNIFORM_DISTANCE:
+                return SpawnBatch.uniformDistance(count, (int) v[0], (int) v[1], (int) v[2], (int) v[3], v[4], v[5], pool);
+            case UNIFORM_ANGLE:
+                return SpawnBatch.uniformAngle(count, (int) v[0], (int) v[1], v[2], v[3], v[4], pool);
+            default:
+                return SpawnBatch.uniformVelocity(count, (int) v[0], (int) v[1], v[2], v[3], v[4], pool);
+        }
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    void write(DataOutput out) throws IOException {
+        out.writeByte(kind);
+        out.writeInt(count);
+        out.writeByte(values.length);
+        for (double value : values) {
+            out.writeDouble(value);
+        }
+    }
+
+    static SpawnRequest read(DataInput in) throws IOException {
+        byte kind = in.readByte();
+        if (kind < AT_POINT || kind > UNIFORM_VELOCITY) {
+            throw new IOException("Unknown spawn kind " + kind);
+        }
+        int count = in.readInt();
+        double[] values = new double[in.readUnsignedByte()];
+        if (values.length != VALUE_COUNTS[kind]) {
+            throw new IOException("Spawn kind " + kind + " expects " + VALUE_COUNTS[kind] + " values");
+        }
+        for (int i = 0; i < values.length; i++) {
+            values[i] = in.readDouble();
+        }
+        return new SpawnRequest(kind, count, values);
+    }
+}
@@ -1,22 +1,86 @@
 import java.awt.*;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Phaser;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntConsumer;
 
 public class ThreadController {
-    private List<ParticleProcessor> processors = new CopyOnWriteArrayList<>();
-    private ForkJoinPool executorService = new ForkJoinPool();
+    public static final int DEFAULT_TICK_RATE = 60;
+    private static final int MAX_CATCH_UP_TICKS = 5;
+    // Leaves per partition give idle workers something to steal when ranges cost differently
+    private static final int SPLITS_PER_PARTITION = 4;
+    private static final int MIN_RANGE_SIZE = 1024;
+
+    private final IdAllocator idAllocator = new IdAllocator();
+    private final Controller particleController = new Controller(idAllocator);
+    private final List<Explorer> explorers = new CopyOnWriteArrayList<>();
+    // Explorers restored from a checkpoint that no client has joined as yet; their ids stay reserved
+    private final List<Explorer> restoredExplorers = new ArrayList<>();
+    // Spawns are generated off the tick thread and appended at a tick boundary, in the order they were requested
+    private final ConcurrentLinkedQueue<PendingSpawn> pendingSpawns = new ConcurrentLinkedQueue<>();
+    private volatile long spawnEpoch = 0;
+    // Client joins, inputs and departures arrive on the network threads and are applied at the start of the next tick
+    private final ConcurrentLinkedQueue<Explorer> pendingJoins = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<ExplorerCommand> pendingCommands = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<Explorer> pendingRemovals = new ConcurrentLinkedQueue<>();
+    // Held while a join takes its id and while a tick boundary applies the joins and the spawns, so a join's id is
+    // always taken before or after all of a boundary's particle ids
+    private final Object joinIdLock = new Object();
+    // Records every applied input while set; only touched under the write lock
+    private InputJournal journal;
+    // Workers of the pool and partitions of the tick, changed together between ticks by the parallelism controller
+    private volatile int partitionCount = 1;
+    private volatile ForkJoinPool executorService = new ForkJoinPool(1);
+    private volatile ParallelismController parallelism = new ParallelismController(Runtime.getRuntime().availableProcessors(), 1_000_000_000L / DEFAULT_TICK_RATE);
+    // CPU time the step leaves of the current tick took, summed over the workers
+    private final LongAdder stepWorkNanos = new LongAdder();
     private int canvasWidth, canvasHeight;
     private int particleSize = 0;
 
-    private long lastAverageProcessingTime = 0;
-    private List<Long> processingTimesHistory = new ArrayList<>();
-    private static final int PROCESSING_TIME_HISTORY_SIZE = 20;
-
-    private int lastParticleSizeAtThreadAddition = 0;
-    private boolean isPaused = false;
+    // The tick thread is the only permanent party; the step task registers for its own tick
+    private final Phaser tickPhaser = new Phaser(1);
+    // Ticks hold the write lock, renderer and broadcaster read between ticks
+    private final ReentrantReadWriteLock stateLock = new ReentrantReadWriteLock();
+    private final Object tickMonitor = new Object();
+    private volatile long tickNumber = 0;
+    private volatile long lastTickNanos = 0;
+    private int tickRate = DEFAULT_TICK_RATE;
+    private long tickIntervalNanos = 1_000_000_000L / DEFAULT_TICK_RATE;
+    private Thread tickThread;
+    private volatile boolean running = false;
+
+    private final LatencyHistogram tickTime = new LatencyHistogram();
+    private final LatencyHistogram partitionTime = new LatencyHistogram();
+    private final LatencyHistogram indexTime = new LatencyHistogram();
+    private final LatencyHistogram frameSnapshotTime = new LatencyHistogram();
+    private final LatencyHistogram collisionTime = new LatencyHistogram();
+    private final LatencyHistogram proximityTime = new LatencyHistogram();
+    private volatile boolean collisionsEnabled = false;
+    // Ticks that took longer than the tick interval; written by the tick thread only
+    private volatile long tickOverruns = 0;
+
+    // Triple buffer towards the render thread: the tick thread fills backFrame and swaps it into latestFrame,
+    // the renderer takes latestFrame and returns the frame it drew through spareFrame
+    private final AtomicReference<FrameSnapshot> latestFrame = new AtomicReference<>();
+    private final AtomicReference<FrameSnapshot> spareFrame = new AtomicReference<>();
+    private FrameSnapshot backFrame;
+    private volatile boolean framesRequested = false;
+    // Set by changes made outside a tick, so a paused simulation still publishes them
+    private volatile boolean frameStale = false;
+
+    private volatile boolean isPaused = false;
 
     private Controller explorerController;
 
@@ -27,164 +91,471 @@ public class ThreadController {
     public void setCanvasSize(int canvasWidth, int canvasHeight) {
         this.canvasWidth = canvasWidth;
         this.canvasHeight = canvasHeight;
-        addProcessor();
+        particleController.setWorldSize(canvasWidth, canvasHeight);
     }
 
-    private void addProcessor() {
-        ParticleProcessor processor = new ParticleProcessor(canvasWidth, canvasHeight);
-        processors.add(processor);
-        executorService.execute(processor);
-        lastParticleSizeAtThreadAddition = particleSize;
+    public int getCanvasWidth() {
+        return canvasWidth;
     }
 
-    private void addProcessor(List<Ball> particles) {
-        ParticleProcessor processor = new ParticleProcessor(canvasWidth, canvasHeight, particles);
-        processors.add(processor);
-        executorService.execute(processor);
-        lastParticleSizeAtThreadAddition = particleSize;
+    public int getCanvasHeight() {
+        return canvasHeight;
     }
 
-    public void checkAndAdjustThread() {
-        if (shouldAddThread()) {
-            redistributeParticles();
+    public void addParticle(int x, int y, double angle, double velocity) {
+        addParticles(1, x, y, angle, velocity);
+    }
+
+    public void addParticles(int n, int x, int y, double angle, double velocity) {
+        spawnAsync(SpawnRequest.atPoint(n, x, y, angle, velocity));
+    }
+
+    public void addSpawnBatch(SpawnBatch batch) {
+        pendingSpawns.add(new PendingSpawn(null, batch, spawnEpoch));
+    }
+
+    // Generates the batch on the pool so callers such as the EDT return immediately; its place in the queue is
+    // taken now, so batches land in request order however long each one takes to generate
+    private void spawnAsync(SpawnRequest request) {
+        PendingSpawn spawn = new PendingSpawn(request, null, spawnEpoch);
+        pendingSpawns.add(spawn);
+        ForkJoinPool pool = executorService;
+        try {
+            pool.execute(() -> generate(spawn, pool));
+        } catch (RejectedExecutionException e) {
+            // The pool was replaced in the meantime; the caller still must not generate it itself
+            ForkJoinPool.commonPool().execute(() -> generate(spawn, ForkJoinPool.commonPool()));
         }
     }
 
-    private boolean shouldAddThread() {
-        if (processingTimesHistory.isEmpty()) {
-            return false;
+    // A failed batch still leaves the queue, empty and unjournaled, so it does not hold back the ones behind it
+    private static void generate(PendingSpawn spawn, ForkJoinPool pool) {
+        SpawnBatch batch = null;
+        try {
+            batch = spawn.request.generate(pool);
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            if (batch == null) {
+                spawn.failed = true;
+                batch = SpawnBatch.of(new double[0], new double[0], new double[0], new double[0]);
+            }
+            spawn.batch = batch;
         }
+    }
 
-        long currentAverageProcessingTime = processingTimesHistory.get(processingTimesHistory.size() - 1);
-        boolean processingTimeIncreasing = currentAverageProcessingTime > lastAverageProcessingTime;
-        boolean significantParticleIncrease = particleSize >= lastParticleSizeAtThreadAddition * 1.10;
+    // Must run under the write lock; stops at the first batch still being generated, and drops batches
+    // requested before the last clear
+    private void applyPendingSpawns() {
+        PendingSpawn spawn;
+        while ((spawn = pendingSpawns.peek()) != null && spawn.batch != null) {
+            pendingSpawns.poll();
+            if (spawn.epoch == spawnEpoch && !spawn.failed) {
+                if (journal != null) {
+                    if (spawn.request != null) {
+                        journal.spawn(tickNumber, spawn.request);
+                    } else {
+                        journal.spawnBatch(tickNumber, spawn.batch);
+                    }
+                }
+                particleController.addParticles(spawn.batch);
+                particleSize += spawn.batch.getCount();
+            }
+        }
+    }
 
-        return processingTimeIncreasing &&
-            processors.size() < Runtime.getRuntime().availableProcessors() &&
-            significantParticleIncrease;
+    // Joining clients take over the restored explorers first, keeping their ids and positions. Never waits for a
+    // tick: the explorer joins the world at the next tick boundary.
+    public Explorer createExplorer(double x, double y) {
+        Explorer explorer;
+        synchronized (restoredExplorers) {
+            explorer = restoredExplorers.isEmpty() ? null : restoredExplorers.remove(0);
+        }
+        synchronized (joinIdLock) {
+            if (explorer == null) {
+                explorer = new Explorer(idAllocator.allocate(), x, y);
+            }
+            pendingJoins.add(explorer);
+        }
+        return explorer;
     }
 
-    public void addParticle(Ball particle) {
-        particleSize++;
+    // Replays join with the id the journal recorded rather than the next free one; null when that id is taken
+    Explorer createExplorer(int id, double x, double y) {
+        Explorer explorer = null;
+        synchronized (restoredExplorers) {
+            for (int i = 0; i < restoredExplorers.size() && explorer == null; i++) {
+                if (restoredExplorers.get(i).getId() == id) {
+                    explorer = restoredExplorers.remove(i);
+                }
+            }
+        }
+        if (explorer == null) {
+            if (!idAllocator.reserve(id)) {
+                return null;
+            }
+            explorer = new Explorer(id, x, y);
+        }
+        pendingJoins.add(explorer);
+        return explorer;
+    }
 
-        ParticleProcessor leastLoadedProcessor = processors.stream()
-            .min((p1, p2) -> Integer.compare(p1.getParticleCount(), p2.getParticleCount()))
-            .orElseThrow(IllegalStateException::new);
+    private void applyPendingJoins() {
+        Explorer explorer;
+        while ((explorer = pendingJoins.poll()) != null) {
+            explorers.add(explorer);
+            if (journal != null) {
+                journal.join(tickNumber, explorer);
+            }
+        }
+    }
 
-        leastLoadedProcessor.addParticle(particle);
+    // A command or departure may be queued right after a join this boundary's drain missed
+    private void joinIfPending(Explorer explorer) {
+        if (!explorers.contains(explorer)) {
+            applyPendingJoins();
+        }
     }
 
-    public void addParticle(int x, int y, double angle, double velocity) {
-        particleSize++;
+    // Safe under the read lock, since the explorer only leaves at the next tick boundary
+    public void removeExplorer(Explorer explorer) {
+        pendingRemovals.add(explorer);
+    }
 
-        ParticleProcessor leastLoadedProcessor = processors.stream()
-            .min((p1, p2) -> Integer.compare(p1.getParticleCount(), p2.getParticleCount()))
-            .orElseThrow(IllegalStateException::new);
+    private void applyPendingRemovals() {
+        Explorer explorer;
+        while ((explorer = pendingRemovals.poll()) != null) {
+            joinIfPending(explorer);
+            if (explorers.remove(explorer)) {
+                idAllocator.release(explorer.getId());
+                if (journal != null) {
+                    journal.leave(tickNumber, explorer.getId());
+                }
+            }
+        }
+    }
 
-        String id = UUID.randomUUID().toString();
-        leastLoadedProcessor.addParticle(new Ball(id, x, y, Math.cos(angle) * velocity, Math.sin(angle) * velocity));
+    public int getIdLimit() {
+        return idAllocator.getIdLimit();
     }
 
-    public void addParticlesWithUniformDistance(int n, int x1, int y1, int x2, int y2, double angle, double velocity) {
-        double deltaX = (x2 - x1) / (double) (n - 1);
-        double deltaY = (y2 - y1) / (double) (n - 1);
+    public void submitCommand(ExplorerCommand command) {
+        pendingCommands.add(command);
+    }
 
-        for (int i = 0; i < n; i++) {
-            int x = x1 + (int) (i * deltaX);
-            int y = y1 + (int) (i * deltaY);
-            addParticle(x, y, angle, velocity);
+    private void applyPendingCommands() {
+        ExplorerCommand command;
+        while ((command = pendingCommands.poll()) != null) {
+            joinIfPending(command.getExplorer());
+            command.apply();
+            if (journal != null) {
+                journal.command(tickNumber, command.getExplorer().getId(), command.getVx(), command.getVy());
+            }
         }
     }
 
-    public void addParticlesWithUniformAngle(int n, int x, int y, double startTheta, double endTheta, double velocity) {
-        double deltaTheta = (endTheta - startTheta) / (n - 1);
+    // Must run under the write lock. Joins are applied before the spawns, in the order they took their ids, so a
+    // replay that applies them in journal order hands out the same ids.
+    private void applyPendingInputs() {
+        synchronized (joinIdLock) {
+            applyPendingJoins();
+            applyPendingSpawns();
+        }
+        applyPendingCommands();
+        applyPendingRemovals();
+    }
+
+    private boolean hasPendingInputs() {
+        return !pendingJoins.isEmpty() || !pendingSpawns.isEmpty() || !pendingCommands.isEmpty() || !pendingRemovals.isEmpty();
+    }
 
-        for (int i = 0; i < n; i++) {
-            double angle = startTheta + i * deltaTheta;
-            addParticle(x, y, angle, velocity);
+    // Applies what is queued right away instead of at the next tick; replays use it to apply inputs in order
+    void flushInputs() {
+        stateLock.writeLock().lock();
+        try {
+            applyPendingInputs();
+        } finally {
+            stateLock.writeLock().unlock();
         }
     }
 
+    public List<Explorer> getExplorers() {
+        return explorers;
+    }
+
+    public void addParticlesWithUniformDistance(int n, int x1, int y1, int x2, int y2, double angle, double velocity) {
+        spawnAsync(SpawnRequest.uniformDistance(n, x1, y1, x2, y2, angle, velocity));
+    }
+
+    public void addParticlesWithUniformAngle(int n, int x, int y, double startTheta, double endTheta, double velocity) {
+        spawnAsync(SpawnRequest.uniformAngle(n, x, y, startTheta, endTheta, velocity));
+    }
+
     public void addParticlesWithUniformVelocity(int n, int x, int y, double angle, double startVelocity, double endVelocity) {
-        double deltaVelocity = (endVelocity - startVelocity) / (n - 1);
+        spawnAsync(SpawnRequest.uniformVelocity(n, x, y, angle, startVelocity, endVelocity));
+    }
 
-        for (int i = 0; i < n; i++) {
-            double velocity = startVelocity + i * deltaVelocity;
-            addParticle(x, y, angle, velocity);
-        }
+    public void start() {
+        start(DEFAULT_TICK_RATE);
     }
 
-    public void updateParticles() {
-        if (!isPaused) {
-            processors.parallelStream().forEach(processor -> executorService.execute(processor));
+    public void start(int tickRate) {
+        this.tickRate = tickRate;
+        tickIntervalNanos = 1_000_000_000L / tickRate;
+        // The step budget follows the tick interval
+        parallelism = new ParallelismController(Runtime.getRuntime().availableProcessors(), tickIntervalNanos);
+        running = true;
+        tickThread = new Thread(this::tickLoop, "simulation-tick");
+        tickThread.setDaemon(true);
+        tickThread.start();
+    }
+
+    public void stop() {
+        running = false;
+        if (tickThread != null) {
+            LockSupport.unpark(tickThread);
+            try {
+                tickThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
         }
+        executorService.shutdown();
     }
 
-    public void drawParticles(Graphics g, int canvasHeight) {
-        drawParticles(g, canvasHeight, 1.0);
+    private void tickLoop() {
+        long nextTickTime = System.nanoTime();
+        while (running) {
+            if (!isPaused) {
+                tick();
+            } else if (hasPendingInputs()) {
+                stateLock.writeLock().lock();
+                try {
+                    applyPendingInputs();
+                    particleController.rebuildSpatialIndex(executorService, partitionCount);
+                    updateProximity();
+                } finally {
+                    stateLock.writeLock().unlock();
+                }
+                publishFrame();
+            } else if (frameStale) {
+                publishFrame();
+            }
+
+            nextTickTime += tickIntervalNanos;
+            long sleepTime = nextTickTime - System.nanoTime();
+            if (sleepTime > 0) {
+                LockSupport.parkNanos(sleepTime);
+            } else if (-sleepTime > tickIntervalNanos * MAX_CATCH_UP_TICKS) {
+                // Too far behind to catch up, drop the backlog instead of spinning
+                nextTickTime = System.nanoTime();
+            }
+        }
     }
 
-    public void drawParticles(Graphics g, int canvasHeight, double alpha) {
-        for (ParticleProcessor processor : processors) {
-            processor.getParticleController().drawParticles(g, canvasHeight, alpha);
+    // Steps every particle once with the fixed timestep and returns when the whole store is done
+    public void tick() {
+        long startTime = System.nanoTime();
+        long indexNanos;
+        int count;
+        stateLock.writeLock().lock();
+        try {
+            applyPendingInputs();
+            count = particleController.getParticleCount();
+            ParticleStepTask stepTask = new ParticleStepTask(0, count, splitThreshold(count));
+            stepWorkNanos.reset();
+            tickPhaser.register();
+            executorService.execute(() -> {
+                try {
+                    stepTask.invoke();
+                } finally {
+                    tickPhaser.arriveAndDeregister();
+                }
+            });
+            for (Explorer explorer : explorers) {
+                explorer.update(canvasWidth, canvasHeight);
+            }
+            tickPhaser.arriveAndAwaitAdvance();
+
+            long indexStart = System.nanoTime();
+            particleController.rebuildSpatialIndex(executorService, partitionCount);
+            indexNanos = System.nanoTime() - indexStart;
+            indexTime.record(indexNanos);
+
+            if (collisionsEnabled) {
+                long collisionStart = System.nanoTime();
+                particleController.resolveCollisions(executorService, partitionCount);
+                long collisionNanos = System.nanoTime() - collisionStart;
+                collisionTime.record(collisionNanos);
+                indexNanos += collisionNanos;
+            }
+            updateProximity();
+
+            // Counted under the lock, so inputs applied after this tick are stamped with it
+            tickNumber++;
+            if (journal != null && tickNumber % InputJournal.CHECKSUM_INTERVAL_TICKS == 0) {
+                journal.checksum(tickNumber, checksum());
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        lastTickNanos = System.nanoTime() - startTime;
+        tickTime.record(lastTickNanos);
+        if (lastTickNanos > tickIntervalNanos) {
+            tickOverruns++;
+        }
+
+        synchronized (tickMonitor) {
+            tickMonitor.notifyAll();
+        }
+        publishFrame();
+
+        // The rebuild and the collision pass are partitioned like the step, so their wall time counts once per worker
+        long work = stepWorkNanos.sum() + indexNanos * partitionCount;
+        int workers = parallelism.record(work, lastTickNanos, count);
+        if (workers != partitionCount) {
+            resizePool(workers);
         }
     }
 
-    public List<Ball> getParticles() {
-        List<Ball> allParticles = new ArrayList<>();
-        for (ParticleProcessor processor : processors) {
-            allParticles.addAll(processor.getParticleController().getParticles());
+    // Must run under the write lock, after the index rebuild; scales with the explorers, not the particles,
+    // so it stays out of the work the parallelism controller models
+    private void updateProximity() {
+        if (explorers.isEmpty()) {
+            return;
         }
-        return allParticles;
+        long proximityStart = System.nanoTime();
+        particleController.updateProximity(explorers, executorService, partitionCount);
+        proximityTime.recordSince(proximityStart);
     }
 
-    public int getParticleSize() {
-        return particleSize;
+    // Runs between ticks: the next tick forks on the new pool, the old one finishes what it was given and exits
+    private void resizePool(int workers) {
+        ForkJoinPool previous = executorService;
+        executorService = new ForkJoinPool(workers);
+        partitionCount = workers;
+        previous.shutdown();
+        prewarmThreads();
     }
 
-    private void redistributeParticles() {
-        int processorSize = processors.size();
-        List<Ball> newParticles = new ArrayList<>();
+    // Ranges are split until they hold about count / (partitions * SPLITS_PER_PARTITION) particles
+    private int splitThreshold(int count) {
+        int leaves = Math.max(1, partitionCount) * SPLITS_PER_PARTITION;
+        return Math.max(MIN_RANGE_SIZE, (count + leaves - 1) / leaves);
+    }
 
-        processors.parallelStream().forEach(processor -> {
-            List<Ball> allParticles = processor.getParticleController().getParticles();
-            int popCount = allParticles.size() / (processorSize + 1);
-            List<Ball> particles = popItems(allParticles, popCount);
-            synchronized (newParticles) {
-                newParticles.addAll(particles);
+    public void registerMetrics(Metrics metrics) {
+        metrics.histogram("tick", "Whole simulation tick, from applying inputs to the rebuilt spatial index", tickTime);
+        metrics.histogram("tick_partition", "Stepping one range of particles on a pool worker", partitionTime);
+        metrics.histogram("spatial_index", "Rebuilding the spatial index after the step", indexTime);
+        metrics.histogram("frame_snapshot", "Copying a tick for the render thread", frameSnapshotTime);
+        metrics.histogram("collisions", "Collision broadphase and narrowphase, when collisions are on", collisionTime);
+        metrics.histogram("explorer_proximity", "Finding the particles near and touching every explorer", proximityTime);
+        metrics.gauge("collision_contacts", "Touching particle pairs resolved in the last tick", particleController::getLastCollisionContacts);
+        metrics.gauge("ticks_total", "Completed simulation ticks", () -> tickNumber);
+        metrics.gauge("tick_overruns_total", "Ticks that took longer than the tick interval", () -> tickOverruns);
+        metrics.gauge("particles", "Particles in the simulation", () -> particleController.getParticleCount());
+        metrics.gauge("explorers", "Explorers in the simulation", explorers::size);
+        metrics.gauge("tick_workers", "Pool workers and partitions the tick uses", () -> partitionCount);
+        metrics.gauge("particle_cost_picos", "Modelled tick work per particle", () -> (long) (parallelism.getNanosPerParticle() * 1000));
+        metrics.gauge("pending_spawns", "Spawn batches waiting for the next tick", pendingSpawns::size);
+    }
+
+    // Blocks until a tick newer than the given one has completed and returns its number
+    public long awaitTickAfter(long tick) throws InterruptedException {
+        synchronized (tickMonitor) {
+            while (tickNumber <= tick) {
+                tickMonitor.wait();
             }
-        });
+            return tickNumber;
+        }
+    }
+
+    public int getTickRate() {
+        return tickRate;
+    }
+
+    public long getTickNumber() {
+        return tickNumber;
+    }
+
+    public long getLastTickNanos() {
+        return lastTickNanos;
+    }
 
-        addProcessor(newParticles);
+    public Lock getReadLock() {
+        return stateLock.readLock();
+    }
+
+    public void drawParticles(Graphics g, int canvasHeight) {
+        drawParticles(g, canvasHeight, 1.0);
     }
 
-    public static List<Ball> popItems(List<Ball> list, int numberOfItemsToPop) {
-        List<Ball> poppedItems = new ArrayList<>();
-        int size = list.size();
-        int endIndex = Math.min(size, numberOfItemsToPop);
-        for (int i = 0; i < endIndex; i++) {
-            poppedItems.add(list.remove(0));
+    public void drawParticles(Graphics g, int canvasHeight, double alpha) {
+        stateLock.readLock().lock();
+        try {
+            particleController.drawParticles(g, canvasHeight, alpha);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        return poppedItems;
     }
 
-    public void updateProcessingTimes() {
-        long totalProcessingTime = 0;
-        for (ParticleProcessor processor : processors) {
-            totalProcessingTime += processor.getLastProcessingTime();
+    // Runs on the tick thread; the copy only holds the read lock, so it overlaps with the broadcasters
+    private void publishFrame() {
+        frameStale = false;
+        if (!framesRequested) {
+            return;
+        }
+        FrameSnapshot frame = backFrame != null ? backFrame : new FrameSnapshot();
+        long start = System.nanoTime();
+        stateLock.readLock().lock();
+        try {
+            frame.capture(tickNumber, lastTickNanos, particleController.getParticles(), explorers);
+        } finally {
+            stateLock.readLock().unlock();
         }
-        long currentAverageProcessingTime = totalProcessingTime / processors.size();
+        frameSnapshotTime.recordSince(start);
+        FrameSnapshot unread = latestFrame.getAndSet(frame);
+        backFrame = unread != null ? unread : spareFrame.getAndSet(null);
+    }
 
-        processingTimesHistory.add(currentAverageProcessingTime);
-        if (processingTimesHistory.size() > PROCESSING_TIME_HISTORY_SIZE) {
-            processingTimesHistory.remove(0);
+    // Returns the newest published frame and hands the caller's previous one back for reuse, or returns
+    // that previous one when nothing newer was published. Meant for a single render thread.
+    public FrameSnapshot takeFrame(FrameSnapshot current) {
+        if (!framesRequested) {
+            framesRequested = true;
+            frameStale = true;
+        }
+        FrameSnapshot next = latestFrame.getAndSet(null);
+        if (next == null) {
+            return current;
+        }
+        if (current != null) {
+            spareFrame.set(current);
         }
+        return next;
+    }
+
+    public ParticleStore getParticles() {
+        return particleController.getParticles();
+    }
 
-        lastAverageProcessingTime = processingTimesHistory.stream().mapToLong(Long::longValue).sum() / processingTimesHistory.size();
+    // Callers must hold the read lock; indices refer to getParticles() as of the last tick
+    public void forEachParticleInRect(double left, double top, double right, double bottom, IntConsumer visitor) {
+        particleController.forEachParticleInRect(left, top, right, bottom, visitor);
+    }
+
+    // Callers must hold the read lock; indexes the particles as of the last tick
+    public SpatialGrid getSpatialGrid() {
+        return particleController.getSpatialGrid();
+    }
+
+    public int getParticleSize() {
+        return particleSize;
     }
 
     private void prewarmThreads() {
-        int prewarmTaskCount = Runtime.getRuntime().availableProcessors();
+        int prewarmTaskCount = executorService.getParallelism();
         List<Runnable> prewarmTasks = new ArrayList<>();
         for (int i = 0; i < prewarmTaskCount; i++) {
             prewarmTasks.add(() -> {
@@ -196,72 +567,209 @@ public class ThreadController {
         prewarmTasks.forEach(executorService::execute);
     }
 
+    // Elastic particle-particle collisions, off by default; takes effect at the next tick
+    public void setCollisionsEnabled(boolean collisionsEnabled) {
+        stateLock.writeLock().lock();
+        try {
+            this.collisionsEnabled = collisionsEnabled;
+            if (journal != null) {
+                journal.collisions(tickNumber, collisionsEnabled);
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+    }
+
+    public boolean isCollisionsEnabled() {
+        return collisionsEnabled;
+    }
+
+    // Takes effect at the next tick; both kernels step particles identically
+    public void setIntegrationKernel(IntegrationKernel kernel) {
+        particleController.getParticles().setKernel(kernel);
+    }
+
+    public IntegrationKernel getIntegrationKernel() {
+        return particleController.getParticles().getKernel();
+    }
+
+    // Centre distance within which particles count as near an explorer; takes effect at the next tick
+    public void setProximityRadius(double radius) {
+        particleController.getProximityQuery().setRadius(radius);
+    }
+
     public void pauseParticles() {
         isPaused = true;
     }
 
     public void resumeParticles() {
         isPaused = false;
-        updateParticles();
     }
 
     public void clearParticles() {
-        processors.forEach(processor -> processor.getParticleController().clearParticles());
-        particleSize = 0;
+        stateLock.writeLock().lock();
+        try {
+            spawnEpoch++;
+            pendingSpawns.clear();
+            particleController.clearParticles();
+            particleSize = 0;
+            for (Explorer explorer : explorers) {
+                explorer.getProximity().reset();
+            }
+            if (journal != null) {
+                journal.clear(tickNumber);
+            }
+        } finally {
+            stateLock.writeLock().unlock();
+        }
+        frameStale = true;
     }
 
-    private class ParticleProcessor implements Runnable {
-        private Controller particleController;
-        private int canvasWidth, canvasHeight;
-        private long lastProcessingTime = 0;
-
-        public ParticleProcessor(int canvasWidth, int canvasHeight) {
-            this.canvasWidth = canvasWidth;
-            this.canvasHeight = canvasHeight;
-            this.particleController = new Controller();
+    // Copies the state into the checkpoint under the read lock, so it runs between ticks without stopping them
+    public void captureCheckpoint(Checkpoint checkpoint) {
+        stateLock.readLock().lock();
+        try {
+            List<Explorer> saved = new ArrayList<>(explorers);
+            synchronized (restoredExplorers) {
+                saved.addAll(restoredExplorers);
+            }
+            checkpoint.capture(tickNumber, canvasWidth, canvasHeight, idAllocator.getIdLimit(), particleController.getParticles(), saved);
+        } finally {
+            stateLock.readLock().unlock();
         }
+    }
 
-        public ParticleProcessor(int canvasWidth, int canvasHeight, List<Ball> particles) {
-            this.canvasWidth = canvasWidth;
-            this.canvasHeight = canvasHeight;
-            this.particleController = new Controller();
-            for (Ball particle : particles) {
-                this.particleController.addParticle(particle);
+    // Replaces the particles and the tick count with the checkpoint's; meant for startup, before any client joins
+    public void restoreCheckpoint(Checkpoint checkpoint) {
+        if (checkpoint.getWorldWidth() != canvasWidth || checkpoint.getWorldHeight() != canvasHeight) {
+            System.err.println("Checkpoint world is " + checkpoint.getWorldWidth() + "x" + checkpoint.getWorldHeight()
+                + ", this one is " + canvasWidth + "x" + canvasHeight + "; particles are kept where they were");
+        }
+        stateLock.writeLock().lock();
+        try {
+            spawnEpoch++;
+            pendingSpawns.clear();
+            particleController.clearParticles();
+
+            int count = checkpoint.getParticleCount();
+            int[] ids = checkpoint.getIds();
+            BitSet used = new BitSet(checkpoint.getIdLimit());
+            for (int i = 0; i < count; i++) {
+                used.set(ids[i]);
+            }
+            for (Explorer explorer : explorers) {
+                used.set(explorer.getId());
+            }
+            synchronized (restoredExplorers) {
+                restoredExplorers.clear();
+                for (int e = 0; e < checkpoint.getExplorerCount(); e++) {
+                    int id = checkpoint.getExplorerIds()[e];
+                    if (used.get(id)) {
+                        continue;
+                    }
+                    Explorer explorer = new Explorer(id, checkpoint.getExplorerX()[e], checkpoint.getExplorerY()[e]);
+                    explorer.setVelocity((int) checkpoint.getExplorerVx()[e], (int) checkpoint.getExplorerVy()[e]);
+                    restoredExplorers.add(explorer);
+                    used.set(id);
+                }
             }
+            idAllocator.reset(checkpoint.getIdLimit(), used);
+
+            particleController.getParticles().restore(ids, checkpoint.getX(), checkpoint.getY(), checkpoint.getVx(), checkpoint.getVy(), count);
+            particleSize = count;
+            particleController.rebuildSpatialIndex(executorService, partitionCount);
+            synchronized (tickMonitor) {
+                tickNumber = checkpoint.getTick();
+                tickMonitor.notifyAll();
+            }
+        } finally {
+            stateLock.writeLock().unlock();
         }
+        frameStale = true;
+    }
 
-        @Override
-        public void run() {
-            long startTime = System.currentTimeMillis();
-            particleController.updateParticles(canvasWidth, canvasHeight);
-            long endTime = System.currentTimeMillis();
-            lastProcessingTime = endTime - startTime;
+    // Journals every input from the next one on, starting from a checkpoint of the current state; meant for
+    // startup, once the world is sized and before any client joins
+    public void startJournal(InputJournal journal) throws IOException {
+        if (canvasWidth <= 0 || canvasHeight <= 0) {
+            throw new IllegalStateException("The world has no size yet");
         }
-
-        public void addParticle(Ball particle) {
-            particleController.addParticle(particle);
+        stateLock.writeLock().lock();
+        try {
+            Checkpoint start = new Checkpoint();
+            captureCheckpoint(start);
+            journal.open(start, collisionsEnabled);
+            this.journal = journal;
+        } finally {
+            stateLock.writeLock().unlock();
         }
+    }
 
-        public Controller getParticleController() {
-            return particleController;
+    public void stopJournal() {
+        stateLock.writeLock().lock();
+        try {
+            if (journal != null) {
+                journal.close(tickNumber);
+                journal = null;
+            }
+        } finally {
+            stateLock.writeLock().unlock();
         }
+    }
 
-        public long getLastProcessingTime() {
-            return lastProcessingTime;
+    // Hash of every particle and explorer; callers must hold the lock
+    long checksum() {
+        long hash = particleController.getParticles().checksum();
+        for (Explorer explorer : explorers) {
+            hash = hash * 31 + explorer.getId();
+            hash = hash * 31 + Double.doubleToLongBits(explorer.getX());
+            hash = hash * 31 + Double.doubleToLongBits(explorer.getY());
         }
+        return hash;
+    }
 
-        public int getParticleCount() {
-            return particleController.getParticles().size();
+    // Sizes the pool for throughput instead of the tick interval, for runs that tick back to back
+    public void scaleForThroughput() {
+        parallelism = new ParallelismController(Runtime.getRuntime().availableProcessors(), 1);
+    }
+
+    // Queued between the request and the tick that appends it; batch is set once generated
+    private static class PendingSpawn {
+        private final SpawnRequest request;
+        private final long epoch;
+        // Written before batch, so it is visible once batch is
+        private boolean failed;
+        private volatile SpawnBatch batch;
+
+        PendingSpawn(SpawnRequest request, SpawnBatch batch, long epoch) {
+            this.request = request;
+            this.batch = batch;
+            this.epoch = epoch;
         }
     }
 
-    public List<String> getAllParticleDataWithIds() {
-        List<String> particlesData = new ArrayList<>();
-        processors.forEach(processor -> {
-            processor.getParticleController().getParticles().forEach(particle -> {
-                particlesData.add("PARTICLE: " + particle.getId() + ", " + particle.getX() + ", " + particle.getY() + ", " + particle.getVx() + ", " + particle.getVy());
-            });
-        });
-        return particlesData;
+    // Splits its index range in halves until it is small enough, so idle workers steal the other half
+    private class ParticleStepTask extends RecursiveAction {
+        private final int from, to, threshold;
+
+        public ParticleStepTask(int from, int to, int threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= threshold) {
+                long start = System.nanoTime();
+                particleController.updateParticles(from, to, canvasWidth, canvasHeight);
+                long nanos = System.nanoTime() - start;
+                partitionTime.record(nanos);
+                stepWorkNanos.add(nanos);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ParticleStepTask(from, mid, threshold), new ParticleStepTask(mid, to, threshold));
+        }
     }
 }